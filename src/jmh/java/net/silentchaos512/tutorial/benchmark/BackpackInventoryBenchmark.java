@@ -0,0 +1,94 @@
+package net.silentchaos512.tutorial.benchmark;
+
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraftforge.items.IItemHandler;
+import net.silentchaos512.tutorial.inventory.BackpackItemHandler;
+import net.silentchaos512.tutorial.item.BackpackItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Getting and saving backpack inventories, for each backpack size at a few fill levels.
+ * <ul>
+ *     <li>{@code getInventory}: the normal lookup, which hits the cached capability</li>
+ *     <li>{@code loadFromStack}: decoding the packed contents, as on a cache miss</li>
+ *     <li>{@code saveOneSlot}: a change to one slot, then a save (the common case)</li>
+ *     <li>{@code saveAll}: saving every slot</li>
+ *     <li>{@code legacySerialize}: the original ItemStackHandler format, for comparison</li>
+ * </ul>
+ * The file write itself happens on a background thread in the game, so it is not measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BackpackInventoryBenchmark {
+    @Param({"27", "270", "2700"})
+    public int size;
+
+    @Param({"0", "50", "100"})
+    public int fillPercent;
+
+    private BackpackItem item;
+    private ItemStack backpack;
+    private BackpackItemHandler handler;
+    private int slot;
+
+    @Setup
+    public void setup() {
+        BenchmarkSetup.init();
+        this.item = BenchmarkSetup.getBackpack(this.size);
+
+        Random random = new Random(42);
+        BackpackItemHandler contents = new BackpackItemHandler(this.size);
+        for (int i = 0; i < this.size; ++i) {
+            if (random.nextInt(100) < this.fillPercent) {
+                contents.setStackInSlot(i, BenchmarkSetup.randomStack(random));
+            }
+        }
+        contents.markDirty();
+
+        // Without a server, backpacks load from the stack, like a backpack from before BackpackStorage
+        this.backpack = new ItemStack(this.item);
+        this.backpack.getOrCreateTag().put("Inventory", contents.writeSnapshot());
+        this.handler = (BackpackItemHandler) this.item.getInventory(this.backpack);
+    }
+
+    @Benchmark
+    public IItemHandler getInventory() {
+        return this.item.getInventory(this.backpack);
+    }
+
+    @Benchmark
+    public BackpackItemHandler loadFromStack() {
+        return BackpackItemHandler.load(this.backpack, this.size);
+    }
+
+    @Benchmark
+    public CompoundNBT saveOneSlot() {
+        this.slot = (this.slot + 1) % this.size;
+        this.handler.setStackInSlot(this.slot, this.handler.getStackInSlot(this.slot));
+        this.item.saveInventory(this.backpack, this.handler);
+        return this.handler.writeSnapshot();
+    }
+
+    @Benchmark
+    public CompoundNBT saveAll() {
+        this.handler.markDirty();
+        return this.handler.writeSnapshot();
+    }
+
+    @Benchmark
+    public CompoundNBT legacySerialize() {
+        return this.handler.serializeNBT();
+    }
+}
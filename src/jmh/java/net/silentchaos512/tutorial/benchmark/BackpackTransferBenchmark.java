@@ -0,0 +1,72 @@
+package net.silentchaos512.tutorial.benchmark;
+
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.minecraftforge.items.ItemHandlerHelper;
+import net.silentchaos512.tutorial.inventory.BackpackItemHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shift-clicking a stack into a backpack. On the server, {@code
+ * BackpackContainer.transferStackInSlot} moves items from the player's inventory with the
+ * backpack's {@link net.silentchaos512.tutorial.inventory.BackpackMergeIndex}, which is what
+ * {@code mergeIndex} measures. Creating a real container needs a player in a world, so the
+ * container itself is left out.
+ * <p>
+ * {@code scan} is the usual approach (check every slot for a stack to merge with, then every slot
+ * for an empty one), for comparison. The backpack is refilled before each call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BackpackTransferBenchmark {
+    @Param({"27", "270", "2700"})
+    public int size;
+
+    @Param({"50", "90"})
+    public int fillPercent;
+
+    private ItemStack[] contents;
+    private BackpackItemHandler handler;
+
+    @Setup
+    public void setup() {
+        BenchmarkSetup.init();
+        Random random = new Random(42);
+        this.contents = new ItemStack[this.size];
+        for (int i = 0; i < this.size; ++i) {
+            this.contents[i] = random.nextInt(100) < this.fillPercent ? BenchmarkSetup.randomStack(random) : ItemStack.EMPTY;
+        }
+        this.handler = new BackpackItemHandler(this.size);
+        // Build the index now, so it is kept up to date when refilling
+        this.handler.getMergeIndex();
+    }
+
+    @Setup(Level.Invocation)
+    public void refill() {
+        for (int i = 0; i < this.size; ++i) {
+            this.handler.setStackInSlot(i, this.contents[i].copy());
+        }
+    }
+
+    @Benchmark
+    public ItemStack mergeIndex() {
+        return this.handler.getMergeIndex().insert(new ItemStack(Items.IRON_INGOT, 64));
+    }
+
+    @Benchmark
+    public ItemStack scan() {
+        return ItemHandlerHelper.insertItemStacked(this.handler, new ItemStack(Items.IRON_INGOT, 64), false);
+    }
+}
@@ -0,0 +1,103 @@
+package net.silentchaos512.tutorial.benchmark;
+
+import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.item.DyeColor;
+import net.minecraft.item.DyeItem;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.minecraft.tags.ItemTags;
+import net.minecraft.tags.Tag;
+import net.minecraft.tags.TagCollection;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.registry.Bootstrap;
+import net.minecraftforge.registries.ForgeRegistries;
+import net.silentchaos512.tutorial.TutorialMod;
+import net.silentchaos512.tutorial.item.BackpackItem;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * Sets up just enough of Minecraft for the benchmarks to run outside the game. Vanilla's bootstrap
+ * registers the vanilla items, then we add our backpacks and the couple of item tags our recipes
+ * use. There is no server, so {@link net.silentchaos512.tutorial.inventory.BackpackStorage} is
+ * never open, and backpacks fall back to the contents on the stack.
+ */
+final class BenchmarkSetup {
+    private static final Item[] FILL_ITEMS = {
+            Items.COBBLESTONE, Items.DIRT, Items.IRON_INGOT, Items.GOLD_INGOT, Items.REDSTONE,
+            Items.DIAMOND, Items.OAK_LOG, Items.STICK, Items.COAL, Items.WHEAT_SEEDS
+    };
+
+    private static BackpackItem backpack;
+    private static BackpackItem largeBackpack;
+    private static BackpackItem hugeBackpack;
+
+    private BenchmarkSetup() {}
+
+    static synchronized void init() {
+        if (backpack != null) return;
+
+        Bootstrap.register();
+        backpack = register("backpack", new BackpackItem(27));
+        largeBackpack = register("large_backpack", new BackpackItem(270));
+        hugeBackpack = register("huge_backpack", new BackpackItem(2700));
+
+        Map<ResourceLocation, Tag<Item>> tags = new HashMap<>();
+        addTag(tags, new ResourceLocation("forge", "dyes"), ForgeRegistries.ITEMS.getValues().stream()
+                .filter(item -> item instanceof DyeItem)
+                .toArray(Item[]::new));
+        addTag(tags, TutorialMod.getId("backpacks"), backpack, largeBackpack, hugeBackpack);
+        TagCollection<Item> collection = new TagCollection<>(id -> Optional.empty(), "", false, "item");
+        collection.registerAll(tags);
+        ItemTags.setCollection(collection);
+    }
+
+    private static BackpackItem register(String name, BackpackItem item) {
+        item.setRegistryName(TutorialMod.getId(name));
+        ForgeRegistries.ITEMS.register(item);
+        return item;
+    }
+
+    private static void addTag(Map<ResourceLocation, Tag<Item>> tags, ResourceLocation id, Item... items) {
+        tags.put(id, Tag.Builder.<Item>create().add(items).build(id));
+    }
+
+    /**
+     * Gets the backpack item with the given number of slots.
+     */
+    static BackpackItem getBackpack(int size) {
+        switch (size) {
+            case 27: return backpack;
+            case 270: return largeBackpack;
+            case 2700: return hugeBackpack;
+            default: throw new IllegalArgumentException("No backpack with " + size + " slots");
+        }
+    }
+
+    /**
+     * Makes a random stack, for filling inventories. Stacks are of a few common items with random
+     * counts, so some slots can be merged into and some cannot, like a real backpack.
+     */
+    static ItemStack randomStack(Random random) {
+        Item item = FILL_ITEMS[random.nextInt(FILL_ITEMS.length)];
+        return new ItemStack(item, 1 + random.nextInt(64));
+    }
+
+    static ItemStack dye(DyeColor color) {
+        return new ItemStack(DyeItem.getItem(color));
+    }
+
+    /**
+     * Creates a player inventory without a player. Creating a real player needs a server world, but
+     * {@link net.silentchaos512.tutorial.command.SimpleGiveCommand#fillInventory} only uses the
+     * inventory's slots.
+     */
+    @SuppressWarnings("ConstantConditions")
+    static PlayerInventory createPlayerInventory() {
+        return new PlayerInventory(null);
+    }
+}
@@ -0,0 +1,68 @@
+package net.silentchaos512.tutorial.benchmark;
+
+import com.mojang.brigadier.suggestion.Suggestions;
+import com.mojang.brigadier.suggestion.SuggestionsBuilder;
+import net.minecraft.command.ISuggestionProvider;
+import net.minecraft.util.ResourceLocation;
+import net.silentchaos512.tutorial.util.IdPrefixIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Item ID suggestions for {@code /sgive}, with the old approach (vanilla's helper, which checks
+ * every ID) and the {@link IdPrefixIndex} the command uses now. The IDs are made up, spread over
+ * 50 namespaces, to stand in for a mod pack's item registry.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ItemSuggestionBenchmark {
+    private static final int MAX_SUGGESTIONS = 100;
+
+    @Param({"1000", "30000"})
+    public int itemCount;
+
+    @Param({"", "t", "ruby", "mod7:item_1"})
+    public String input;
+
+    private List<ResourceLocation> ids;
+    private IdPrefixIndex index;
+
+    @Setup
+    public void setup() {
+        this.ids = new ArrayList<>();
+        for (int i = 0; i < this.itemCount; ++i) {
+            this.ids.add(new ResourceLocation("mod" + (i % 50), "item_" + i));
+        }
+        this.ids.add(new ResourceLocation("tutorial", "ruby"));
+        this.ids.add(new ResourceLocation("tutorial", "ruby_block"));
+        this.index = new IdPrefixIndex(this.ids);
+    }
+
+    @Benchmark
+    public Suggestions scanRegistry() {
+        return ISuggestionProvider.func_212476_a(this.ids.stream(), new SuggestionsBuilder(this.input, 0)).join();
+    }
+
+    @Benchmark
+    public Suggestions prefixIndex() {
+        SuggestionsBuilder builder = new SuggestionsBuilder(this.input, 0);
+        this.index.find(builder.getRemaining(), MAX_SUGGESTIONS).forEach(builder::suggest);
+        return builder.build();
+    }
+
+    @Benchmark
+    public IdPrefixIndex buildIndex() {
+        return new IdPrefixIndex(this.ids);
+    }
+}
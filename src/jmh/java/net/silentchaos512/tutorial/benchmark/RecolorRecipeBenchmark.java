@@ -0,0 +1,101 @@
+package net.silentchaos512.tutorial.benchmark;
+
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.inventory.CraftingInventory;
+import net.minecraft.inventory.container.Container;
+import net.minecraft.item.DyeColor;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.silentchaos512.tutorial.TutorialMod;
+import net.silentchaos512.tutorial.crafting.recipe.RecolorBackpackRecipe;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The backpack recolor recipe on a 3x3 crafting grid. Vanilla calls {@code matches} and then
+ * {@code getCraftingResult} each time the grid changes, which is what these do.
+ * <ul>
+ *     <li>{@code unchangedGrid}: the grid is checked again without changes</li>
+ *     <li>{@code changedGrid}: one slot changes between checks, like a player filling the grid</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RecolorRecipeBenchmark {
+    @Param({"one_dye", "eight_dyes", "no_match"})
+    public String grid;
+
+    private RecolorBackpackRecipe recipe;
+    private CraftingInventory inventory;
+    private int changingSlot;
+    private ItemStack[] changingStacks;
+    private int changeCount;
+
+    @Setup
+    public void setup() {
+        BenchmarkSetup.init();
+        this.recipe = new RecolorBackpackRecipe(TutorialMod.getId("recolor_backpack"));
+        this.inventory = new CraftingInventory(new Container(null, 0) {
+            @Override
+            public boolean canInteractWith(PlayerEntity playerIn) {
+                return true;
+            }
+        }, 3, 3);
+
+        ItemStack backpack = new ItemStack(BenchmarkSetup.getBackpack(27));
+        switch (this.grid) {
+            case "one_dye":
+                this.inventory.setInventorySlotContents(0, backpack);
+                this.changingSlot = 1;
+                this.changingStacks = new ItemStack[]{BenchmarkSetup.dye(DyeColor.RED), BenchmarkSetup.dye(DyeColor.BLUE)};
+                break;
+            case "eight_dyes":
+                this.inventory.setInventorySlotContents(4, backpack);
+                for (int i = 0; i < 9; ++i) {
+                    if (i != 4) {
+                        this.inventory.setInventorySlotContents(i, BenchmarkSetup.dye(DyeColor.byId(i)));
+                    }
+                }
+                this.changingSlot = 0;
+                this.changingStacks = new ItemStack[]{BenchmarkSetup.dye(DyeColor.RED), BenchmarkSetup.dye(DyeColor.BLUE)};
+                break;
+            case "no_match":
+                this.inventory.setInventorySlotContents(0, backpack);
+                this.changingSlot = 1;
+                this.changingStacks = new ItemStack[]{new ItemStack(Items.COBBLESTONE), new ItemStack(Items.DIRT)};
+                break;
+            default:
+                throw new IllegalArgumentException(this.grid);
+        }
+        this.inventory.setInventorySlotContents(this.changingSlot, this.changingStacks[0].copy());
+    }
+
+    @Benchmark
+    public ItemStack unchangedGrid() {
+        return craft();
+    }
+
+    @Benchmark
+    public ItemStack changedGrid() {
+        ++this.changeCount;
+        this.inventory.setInventorySlotContents(this.changingSlot, this.changingStacks[this.changeCount & 1].copy());
+        return craft();
+    }
+
+    private ItemStack craft() {
+        //noinspection ConstantConditions
+        if (this.recipe.matches(this.inventory, null)) {
+            return this.recipe.getCraftingResult(this.inventory);
+        }
+        return ItemStack.EMPTY;
+    }
+}
@@ -0,0 +1,47 @@
+package net.silentchaos512.tutorial.benchmark;
+
+import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.item.Items;
+import net.silentchaos512.tutorial.command.SimpleGiveCommand;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filling a player's inventory with {@code /sgive}. 2304 items exactly fill an empty inventory with
+ * cobblestone, and anything more overflows. Dropping the overflow (spawning entities, sounds and
+ * packets) needs a server, so only the inventory part of the command is measured here.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SimpleGiveBenchmark {
+    @Param({"64", "2304", "100000"})
+    public int count;
+
+    private PlayerInventory inventory;
+
+    @Setup
+    public void setup() {
+        BenchmarkSetup.init();
+        this.inventory = BenchmarkSetup.createPlayerInventory();
+    }
+
+    @Setup(Level.Invocation)
+    public void clearInventory() {
+        this.inventory.clear();
+    }
+
+    @Benchmark
+    public int fillInventory() {
+        return SimpleGiveCommand.fillInventory(this.inventory, Items.COBBLESTONE, this.count);
+    }
+}
@@ -0,0 +1,107 @@
+package net.silentchaos512.tutorial;
+
+import net.minecraftforge.common.ForgeConfigSpec;
+import net.minecraftforge.fml.ModLoadingContext;
+import net.minecraftforge.fml.config.ModConfig;
+import net.silentchaos512.tutorial.inventory.BackpackSorter;
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * Mod configs, using Forge's config system. {@link ForgeConfigSpec} builds a spec from the values
+ * we define, then Forge creates and loads the TOML file for us (config/tutorial-common.toml).
+ * <p>
+ * Config values cannot be read until the config is loaded, which happens after mod construction.
+ * Do not call {@code get()} on them in constructors or static initializers.
+ */
+public final class Config {
+    public static final Common COMMON;
+    private static final ForgeConfigSpec COMMON_SPEC;
+
+    static {
+        Pair<Common, ForgeConfigSpec> common = new ForgeConfigSpec.Builder().configure(Common::new);
+        COMMON = common.getLeft();
+        COMMON_SPEC = common.getRight();
+    }
+
+    private Config() {}
+
+    /**
+     * Registers the configs. Call this from the mod constructor.
+     */
+    public static void init() {
+        ModLoadingContext.get().registerConfig(ModConfig.Type.COMMON, COMMON_SPEC);
+    }
+
+    public static final class Common {
+        public final ForgeConfigSpec.IntValue backpackCheckpointInterval;
+        public final ForgeConfigSpec.IntValue backpackCheckpointBudget;
+        public final ForgeConfigSpec.IntValue backpackCacheSize;
+        public final ForgeConfigSpec.EnumValue<BackpackSorter.SortOrder> backpackSortOrder;
+        public final ForgeConfigSpec.IntValue sgiveMaxDrops;
+        public final ForgeConfigSpec.IntValue sgiveNbtCacheSize;
+        public final ForgeConfigSpec.IntValue schedulerTickBudget;
+        public final ForgeConfigSpec.IntValue schedulerProgressInterval;
+        public final ForgeConfigSpec.BooleanValue metricsEnabled;
+        public final ForgeConfigSpec.BooleanValue worldGenGemOres;
+        public final ForgeConfigSpec.IntValue worldGenRetrogenTickBudget;
+
+        Common(ForgeConfigSpec.Builder builder) {
+            builder.push("backpack");
+            backpackCheckpointInterval = builder
+                    .comment("How often (in ticks) open backpacks save changed slots, so contents are not lost on a crash or kick.",
+                            "Set to 0 to only save when the backpack is closed.")
+                    .defineInRange("checkpointInterval", 200, 0, Integer.MAX_VALUE);
+            backpackCheckpointBudget = builder
+                    .comment("Maximum number of backpack slots written per tick during checkpoints.",
+                            "Remaining changes carry over to the next tick.")
+                    .defineInRange("checkpointBudget", 64, 1, Integer.MAX_VALUE);
+            backpackCacheSize = builder
+                    .comment("Maximum number of backpack inventories kept loaded in memory.",
+                            "Backpacks which are open are always kept loaded, even if this is exceeded.")
+                    .defineInRange("cacheSize", 256, 1, Integer.MAX_VALUE);
+            backpackSortOrder = builder
+                    .comment("The order items are placed in when a backpack is sorted.",
+                            "ID: by item ID, NAME: by display name, COUNT: largest total count first")
+                    .defineEnum("sortOrder", BackpackSorter.SortOrder.ID);
+            builder.pop();
+
+            builder.push("sgive");
+            sgiveMaxDrops = builder
+                    .comment("Maximum number of item entities /sgive drops per player when their inventory is full.",
+                            "Each entity holds up to 127 items. Commands which would need more entities are refused.")
+                    .defineInRange("maxDrops", 16, 0, 1024);
+            sgiveNbtCacheSize = builder
+                    .comment("Number of parsed NBT strings /sgive remembers, so repeated commands do not parse them again.",
+                            "Set to 0 to parse every time.")
+                    .defineInRange("nbtCacheSize", 64, 0, 4096);
+            builder.pop();
+
+            builder.push("scheduler");
+            schedulerTickBudget = builder
+                    .comment("Time (in microseconds) scheduled jobs, like /sgive ... scheduled, may use each tick.",
+                            "At least one task always runs per tick, so jobs finish even with a very small budget.")
+                    .defineInRange("tickBudget", 2000, 1, 50000);
+            schedulerProgressInterval = builder
+                    .comment("How often (in ticks) scheduled jobs report their progress. Set to 0 to only report completion.")
+                    .defineInRange("progressInterval", 40, 0, Integer.MAX_VALUE);
+            builder.pop();
+
+            builder.push("metrics");
+            metricsEnabled = builder
+                    .comment("Collect performance metrics when the server starts. See /tutorial metrics.",
+                            "They can also be turned on and off with the command.")
+                    .define("enabled", false);
+            builder.pop();
+
+            builder.push("worldgen");
+            worldGenGemOres = builder
+                    .comment("Generate gem ores in new chunks. Vein size, count, heights and biomes are set for each gem in tutorial-gems.json.")
+                    .define("gemOres", true);
+            worldGenRetrogenTickBudget = builder
+                    .comment("Time (in microseconds) gem ore retrogen may use each tick. See /tutorial retrogen.",
+                            "At least one chunk is processed per tick, so retrogen always makes progress.")
+                    .defineInRange("retrogenTickBudget", 1000, 1, 50000);
+            builder.pop();
+        }
+    }
+}
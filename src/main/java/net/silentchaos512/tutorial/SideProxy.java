@@ -1,39 +1,93 @@
 package net.silentchaos512.tutorial;
 
 import net.minecraft.block.Block;
+import net.minecraft.client.Minecraft;
 import net.minecraft.inventory.container.ContainerType;
 import net.minecraft.item.Item;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.dimension.DimensionType;
+import net.minecraft.world.gen.feature.Feature;
+import net.minecraftforge.client.event.ColorHandlerEvent;
 import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.RegistryEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.eventbus.api.EventPriority;
+import net.minecraftforge.eventbus.api.IEventBus;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.DeferredWorkQueue;
 import net.minecraftforge.fml.event.lifecycle.*;
+import net.minecraftforge.fml.event.server.FMLServerAboutToStartEvent;
+import net.minecraftforge.fml.event.server.FMLServerStartedEvent;
 import net.minecraftforge.fml.event.server.FMLServerStartingEvent;
+import net.minecraftforge.fml.event.server.FMLServerStoppedEvent;
 import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
 import net.silentchaos512.tutorial.client.ColorHandlers;
 import net.silentchaos512.tutorial.command.SimpleGiveCommand;
+import net.silentchaos512.tutorial.command.TutorialCommand;
+import net.silentchaos512.tutorial.imc.BackpackImc;
+import net.silentchaos512.tutorial.init.Gem;
 import net.silentchaos512.tutorial.init.ModBlocks;
 import net.silentchaos512.tutorial.init.ModContainerTypes;
+import net.silentchaos512.tutorial.init.ModFeatures;
 import net.silentchaos512.tutorial.init.ModItems;
 import net.silentchaos512.tutorial.init.ModRecipes;
+import net.silentchaos512.tutorial.inventory.BackpackAutoPickup;
+import net.silentchaos512.tutorial.inventory.BackpackCheckpoints;
+import net.silentchaos512.tutorial.inventory.BackpackStorage;
+import net.silentchaos512.tutorial.metrics.Metrics;
+import net.silentchaos512.tutorial.metrics.StartupBenchmark;
+import net.silentchaos512.tutorial.metrics.StartupProfiler;
+import net.silentchaos512.tutorial.resources.GemResourcePack;
+import net.silentchaos512.tutorial.util.TickScheduler;
+import net.silentchaos512.tutorial.world.GemOreFeature;
+import net.silentchaos512.tutorial.world.GemOreRetrogen;
+import net.silentchaos512.tutorial.world.LoadedChunks;
+import net.silentchaos512.tutorial.world.RetrogenMarker;
 
 /**
  * SideProxy allows client and server code to be separated, while executing common code on both
  * sides. You could use this just for the sided code, but I initialize everything in proxy classes.
  * There are two nested classes, {@link Client} and {@link Server}.
+ * <p>
+ * Life-cycle listeners are added through {@link StartupProfiler}, which times them. The times are
+ * written to the log when loading completes, and again when the server is ready.
  */
 class SideProxy {
     SideProxy() {
         // Life-cycle events
-        FMLJavaModLoadingContext.get().getModEventBus().addListener(SideProxy::commonSetup);
-        FMLJavaModLoadingContext.get().getModEventBus().addListener(SideProxy::enqueueIMC);
-        FMLJavaModLoadingContext.get().getModEventBus().addListener(SideProxy::processIMC);
-        FMLJavaModLoadingContext.get().getModEventBus().addGenericListener(Block.class, ModBlocks::registerAll);
-        FMLJavaModLoadingContext.get().getModEventBus().addGenericListener(ContainerType.class, ModContainerTypes::registerContainerTypes);
-        FMLJavaModLoadingContext.get().getModEventBus().addGenericListener(Item.class, ModItems::registerAll);
+        IEventBus modBus = FMLJavaModLoadingContext.get().getModEventBus();
+        StartupProfiler.addListener(modBus, "commonSetup", FMLCommonSetupEvent.class, SideProxy::commonSetup);
+        StartupProfiler.addListener(modBus, "enqueueIMC", InterModEnqueueEvent.class, SideProxy::enqueueIMC);
+        StartupProfiler.addListener(modBus, "processIMC", InterModProcessEvent.class, SideProxy::processIMC);
+        StartupProfiler.addListener(modBus, "loadComplete", FMLLoadCompleteEvent.class, SideProxy::loadComplete);
+        StartupProfiler.addGenericListener(modBus, "ModBlocks.registerAll", Block.class, RegistryEvent.Register.class, ModBlocks::registerAll);
+        StartupProfiler.addGenericListener(modBus, "ModContainerTypes.registerContainerTypes", ContainerType.class, RegistryEvent.Register.class, ModContainerTypes::registerContainerTypes);
+        StartupProfiler.addGenericListener(modBus, "ModItems.registerAll", Item.class, RegistryEvent.Register.class, ModItems::registerAll);
+        StartupProfiler.addGenericListener(modBus, "ModFeatures.registerFeatures", Feature.class, RegistryEvent.Register.class, ModFeatures::registerFeatures);
+
+        // Server start-up events
+        StartupProfiler.addListener(MinecraftForge.EVENT_BUS, "serverAboutToStart", FMLServerAboutToStartEvent.class, SideProxy::serverAboutToStart);
+        StartupProfiler.addListener(MinecraftForge.EVENT_BUS, "serverStarting", FMLServerStartingEvent.class, SideProxy::serverStarting);
+        MinecraftForge.EVENT_BUS.addListener(SideProxy::serverStarted);
 
         // Other events
         MinecraftForge.EVENT_BUS.register(this);
+        MinecraftForge.EVENT_BUS.addListener(BackpackCheckpoints::onServerTick);
+        MinecraftForge.EVENT_BUS.addListener(BackpackStorage::onPlayerLoggedOut);
+        MinecraftForge.EVENT_BUS.addListener(BackpackStorage::onChunkUnload);
+        MinecraftForge.EVENT_BUS.addListener(EventPriority.LOWEST, BackpackStorage::onItemExpire);
+        MinecraftForge.EVENT_BUS.addListener(BackpackStorage::onEntityLeaveWorld);
+        MinecraftForge.EVENT_BUS.addListener(BackpackAutoPickup::onItemPickup);
+        MinecraftForge.EVENT_BUS.addListener(BackpackAutoPickup::onServerTick);
+        MinecraftForge.EVENT_BUS.addListener(TickScheduler::onServerTick);
+        MinecraftForge.EVENT_BUS.addListener(GemOreRetrogen::onServerTick);
+        MinecraftForge.EVENT_BUS.addGenericListener(Chunk.class, RetrogenMarker::attach);
+        MinecraftForge.EVENT_BUS.addListener(RetrogenMarker::onChunkDataLoad);
+        MinecraftForge.EVENT_BUS.addListener(RetrogenMarker::onChunkDataSave);
+        MinecraftForge.EVENT_BUS.addListener(LoadedChunks::onChunkLoad);
+        MinecraftForge.EVENT_BUS.addListener(LoadedChunks::onChunkUnload);
 
-        ModRecipes.init();
+        StartupProfiler.time("ModRecipes.init", ModRecipes::init);
     }
 
     /**
@@ -43,6 +97,9 @@ class SideProxy {
      */
     private static void commonSetup(FMLCommonSetupEvent event) {
         TutorialMod.LOGGER.debug("commonSetup for Tutorial Mod");
+        RetrogenMarker.register();
+        // Setup events run in parallel with other mods, which may be adding to the same biomes
+        DeferredWorkQueue.runLater(() -> StartupProfiler.time("ModFeatures.addToBiomes", ModFeatures::addToBiomes));
     }
 
     /**
@@ -59,6 +116,30 @@ class SideProxy {
      * @param event The event
      */
     private static void processIMC(final InterModProcessEvent event) {
+        BackpackImc.process(event);
+    }
+
+    /**
+     * Called once all mods have finished loading. Registries can no longer change, so this is a
+     * good time to build anything based on them.
+     *
+     * @param event The event
+     */
+    private static void loadComplete(FMLLoadCompleteEvent event) {
+        SimpleGiveCommand.buildItemIndex();
+        StartupProfiler.logReport("load complete");
+    }
+
+    /**
+     * Fired before the server loads its data packs. This is our chance to add the generated gem
+     * data (recipes, loot tables and tags) as a data pack. It is also before spawn chunks are
+     * generated, so the world generation config must be applied here.
+     *
+     * @param event The event
+     */
+    private static void serverAboutToStart(FMLServerAboutToStartEvent event) {
+        GemResourcePack.addTo(event.getServer().getResourcePacks());
+        GemOreFeature.setEnabled(Config.COMMON.worldGenGemOres.get());
     }
 
     /**
@@ -69,9 +150,59 @@ class SideProxy {
      *
      * @param event The event
      */
-    @SubscribeEvent
-    public void serverStarting(FMLServerStartingEvent event) {
+    private static void serverStarting(FMLServerStartingEvent event) {
         SimpleGiveCommand.register(event.getCommandDispatcher());
+        TutorialCommand.register(event.getCommandDispatcher());
+        Metrics.setEnabled(Config.COMMON.metricsEnabled.get());
+        BackpackStorage.open(event.getServer());
+        GemOreRetrogen.open(event.getServer());
+    }
+
+    /**
+     * Fired when the server is ready for players to join. For a dedicated server, this is the end
+     * of start-up.
+     *
+     * @param event The event
+     */
+    private static void serverStarted(FMLServerStartedEvent event) {
+        StartupProfiler.logReport("server ready");
+        StartupBenchmark.onServerReady(event.getServer(), Gem.values().size());
+    }
+
+    /**
+     * Fired after the server has stopped. Players have been saved and removed at this point, so
+     * every open backpack has been closed and saved.
+     *
+     * @param event The event
+     */
+    @SubscribeEvent
+    public void serverStopped(FMLServerStoppedEvent event) {
+        TickScheduler.clear();
+        BackpackStorage.close();
+        GemOreRetrogen.close();
+        GemOreFeature.clearOverrides();
+        LoadedChunks.clear();
+        RetrogenMarker.clear();
+    }
+
+    /**
+     * Fired when a world saves, including autosaves. Backpacks and retrogen progress are stored once
+     * for the whole server, so we only need to save them with the overworld.
+     *
+     * @param event The event
+     */
+    @SubscribeEvent
+    public void worldSave(WorldEvent.Save event) {
+        if (!event.getWorld().isRemote() && event.getWorld().getDimension().getType() == DimensionType.OVERWORLD) {
+            BackpackStorage storage = BackpackStorage.get();
+            if (storage != null) {
+                storage.saveAll();
+            }
+            GemOreRetrogen retrogen = GemOreRetrogen.get();
+            if (retrogen != null) {
+                retrogen.save();
+            }
+        }
     }
 
     /**
@@ -80,9 +211,17 @@ class SideProxy {
      */
     static class Client extends SideProxy {
         Client() {
-            FMLJavaModLoadingContext.get().getModEventBus().addListener(Client::clientSetup);
-            FMLJavaModLoadingContext.get().getModEventBus().addListener(ColorHandlers::registerItemColor);
-            FMLJavaModLoadingContext.get().getModEventBus().addListener(ModContainerTypes::registerScreens);
+            IEventBus modBus = FMLJavaModLoadingContext.get().getModEventBus();
+            StartupProfiler.addListener(modBus, "clientSetup", FMLClientSetupEvent.class, Client::clientSetup);
+            StartupProfiler.addListener(modBus, "ColorHandlers.registerItemColor", ColorHandlerEvent.Item.class, ColorHandlers::registerItemColor);
+            StartupProfiler.addListener(modBus, "ModContainerTypes.registerScreens", FMLClientSetupEvent.class, ModContainerTypes::registerScreens);
+
+            // Generated gem models and translations. Resources are first loaded after mod
+            // construction, so the pack must be added now. Minecraft is null during data generation.
+            //noinspection ConstantConditions
+            if (Minecraft.getInstance() != null) {
+                GemResourcePack.addTo(Minecraft.getInstance().getResourcePackList());
+            }
         }
 
         private static void clientSetup(FMLClientSetupEvent event) {
@@ -94,7 +233,7 @@ class SideProxy {
      */
     static class Server extends SideProxy {
         Server() {
-            FMLJavaModLoadingContext.get().getModEventBus().addListener(Server::serverSetup);
+            StartupProfiler.addListener(FMLJavaModLoadingContext.get().getModEventBus(), "serverSetup", FMLDedicatedServerSetupEvent.class, Server::serverSetup);
         }
 
         private static void serverSetup(FMLDedicatedServerSetupEvent event) {
@@ -7,7 +7,10 @@ import net.minecraftforge.fml.DistExecutor;
 import net.minecraftforge.fml.ModContainer;
 import net.minecraftforge.fml.ModList;
 import net.minecraftforge.fml.common.Mod;
+import net.silentchaos512.tutorial.init.Gem;
 import net.silentchaos512.tutorial.init.ModBlocks;
+import net.silentchaos512.tutorial.metrics.StartupProfiler;
+import net.silentchaos512.tutorial.network.Network;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -40,6 +43,11 @@ public class TutorialMod {
     };
 
     public TutorialMod() {
+        StartupProfiler.time("Config.init", Config::init);
+        StartupProfiler.time("Network.init", Network::init);
+        // Gems must be known before registry events
+        StartupProfiler.time("Gem.loadDefinitions", Gem::loadDefinitions);
+
         // Create proxy instance. DistExecutor.runForDist also returns the created object, so you
         // could store that in a variable if you need it.
         // We cannot use method references here because it could load classes on invalid sides.
@@ -0,0 +1,29 @@
+package net.silentchaos512.tutorial.client;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.entity.player.ClientPlayerEntity;
+import net.minecraft.inventory.container.Container;
+import net.silentchaos512.tutorial.network.BackpackSlotsPacket;
+
+/**
+ * Client-side packet handling. Packets are loaded on both sides, so anything referencing client
+ * classes like {@link Minecraft} goes here, and is only called through {@link
+ * net.minecraftforge.fml.DistExecutor}.
+ */
+public final class ClientNetworkHandler {
+    private ClientNetworkHandler() {}
+
+    public static void handleBackpackSlots(BackpackSlotsPacket packet) {
+        ClientPlayerEntity player = Minecraft.getInstance().player;
+        if (player == null || player.openContainer.windowId != packet.getWindowId()) {
+            return;
+        }
+
+        // This runs on the main thread, so all slots change before the next frame is rendered
+        Container container = player.openContainer;
+        int[] slots = packet.getSlots();
+        for (int i = 0; i < slots.length; ++i) {
+            container.putStackInSlot(slots[i], packet.getStacks()[i]);
+        }
+    }
+}
@@ -6,6 +6,7 @@ import net.silentchaos512.tutorial.item.BackpackItem;
 
 public class ColorHandlers {
     public static void registerItemColor(ColorHandlerEvent.Item event) {
-        event.getItemColors().register(BackpackItem::getItemColor, ModItems.backpack);
+        // getItemColor uses BackpackItem.getCachedBackpackColor, which is safe to call while rendering
+        event.getItemColors().register(BackpackItem::getItemColor, ModItems.backpack, ModItems.largeBackpack, ModItems.hugeBackpack);
     }
 }
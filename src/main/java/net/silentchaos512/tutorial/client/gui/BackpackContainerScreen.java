@@ -2,21 +2,54 @@ package net.silentchaos512.tutorial.client.gui;
 
 import com.mojang.blaze3d.platform.GlStateManager;
 import net.minecraft.client.gui.screen.inventory.ContainerScreen;
+import net.minecraft.client.gui.widget.button.Button;
+import net.minecraft.client.resources.I18n;
 import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.text.ITextComponent;
 import net.silentchaos512.tutorial.inventory.BackpackContainer;
+import net.silentchaos512.tutorial.network.Network;
+import net.silentchaos512.tutorial.network.ScrollBackpackPacket;
+import net.silentchaos512.tutorial.network.SortBackpackPacket;
+import net.silentchaos512.tutorial.network.ToggleAutoPickupPacket;
 
 public class BackpackContainerScreen extends ContainerScreen<BackpackContainer> {
     private static final ResourceLocation TEXTURE = new ResourceLocation("textures/gui/container/generic_54.png");
 
     private final PlayerInventory playerInventory;
     private final int inventoryRows;
+    private Button autoPickupButton;
 
     public BackpackContainerScreen(BackpackContainer screenContainer, PlayerInventory inv, ITextComponent titleIn) {
         super(screenContainer, inv, titleIn);
         this.playerInventory = inv;
+        // The number of visible rows, which is never more than six. Larger backpacks scroll.
         this.inventoryRows = screenContainer.getInventoryRows();
+        this.ySize = 114 + this.inventoryRows * 18;
+    }
+
+    @Override
+    protected void init() {
+        super.init();
+        // Buttons go left of the window, since the scroll bar is on the right
+        String text = I18n.format("container.tutorial.backpack.sort");
+        addButton(new Button(this.guiLeft - 52, this.guiTop, 50, 14, text, button ->
+                Network.CHANNEL.sendToServer(new SortBackpackPacket(this.container.windowId))));
+        this.autoPickupButton = addButton(new Button(this.guiLeft - 52, this.guiTop + 16, 50, 14, getAutoPickupText(), button ->
+                Network.CHANNEL.sendToServer(new ToggleAutoPickupPacket(this.container.windowId))));
+    }
+
+    @Override
+    public void tick() {
+        super.tick();
+        // The auto-pickup state is synced by the container, so update the label when it changes
+        if (this.autoPickupButton != null) {
+            this.autoPickupButton.setMessage(getAutoPickupText());
+        }
+    }
+
+    private String getAutoPickupText() {
+        return I18n.format(this.container.hasAutoPickup() ? "container.tutorial.backpack.pickup.on" : "container.tutorial.backpack.pickup.off");
     }
 
     @Override
@@ -26,10 +59,32 @@ public class BackpackContainerScreen extends ContainerScreen<BackpackContainer>
         this.renderHoveredToolTip(mouseX, mouseY);
     }
 
+    @Override
+    public boolean mouseScrolled(double mouseX, double mouseY, double delta) {
+        if (canScroll() && delta != 0) {
+            int row = this.container.getScrollRow() - (int) Math.signum(delta);
+            // Move the client's scroll bar right away, then let the server move the actual window
+            this.container.setScrollRow(row);
+            Network.CHANNEL.sendToServer(new ScrollBackpackPacket(this.container.windowId, this.container.getScrollRow()));
+            return true;
+        }
+        return super.mouseScrolled(mouseX, mouseY, delta);
+    }
+
+    private boolean canScroll() {
+        return this.container.getTotalRows() > this.inventoryRows;
+    }
+
     @Override
     protected void drawGuiContainerForegroundLayer(int mouseX, int mouseY) {
         this.font.drawString(title.getFormattedText(), 8, 6, 4210752);
         this.font.drawString(playerInventory.getDisplayName().getFormattedText(), 8, this.ySize - 96 + 2, 4210752);
+
+        if (canScroll()) {
+            // Summary of the whole backpack, since most of it is not visible
+            String summary = I18n.format("container.tutorial.backpack.summary", this.container.getUsedSlots(), this.container.getInventorySize());
+            this.font.drawString(summary, this.xSize - 8 - this.font.getStringWidth(summary), 6, 4210752);
+        }
     }
 
     @Override
@@ -44,5 +99,24 @@ public class BackpackContainerScreen extends ContainerScreen<BackpackContainer>
         // blit(posX, posY, minU, minV, maxU, maxV)
         blit(posX, posY, 0, 0, this.xSize, this.inventoryRows * 18 + 17);
         blit(posX, posY + this.inventoryRows * 18 + 17, 0, 126, this.xSize, 96);
+
+        if (canScroll()) {
+            drawScrollBar(posX + this.xSize + 2, posY + 18);
+        }
+    }
+
+    /**
+     * Draws a simple scroll bar to the right of the window. The thumb size shows how much of the
+     * backpack is visible.
+     */
+    private void drawScrollBar(int x, int y) {
+        int height = this.inventoryRows * 18;
+        int totalRows = this.container.getTotalRows();
+        int thumbHeight = Math.max(4, height * this.inventoryRows / totalRows);
+        int maxRow = totalRows - this.inventoryRows;
+        int thumbY = y + (height - thumbHeight) * this.container.getScrollRow() / maxRow;
+
+        fill(x, y, x + 6, y + height, 0xFF373737);
+        fill(x + 1, thumbY, x + 5, thumbY + thumbHeight, 0xFFC6C6C6);
     }
 }
@@ -0,0 +1,81 @@
+package net.silentchaos512.tutorial.command;
+
+import com.mojang.brigadier.builder.ArgumentBuilder;
+import net.minecraft.command.CommandSource;
+import net.minecraft.command.Commands;
+import net.minecraft.util.text.StringTextComponent;
+import net.minecraft.util.text.TranslationTextComponent;
+import net.silentchaos512.tutorial.TutorialMod;
+import net.silentchaos512.tutorial.metrics.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * {@code /tutorial metrics [enable|disable|reset|dump]}. With no arguments, shows every metric in
+ * chat. See {@link Metrics}.
+ */
+public final class MetricsCommand {
+    private MetricsCommand() {}
+
+    static ArgumentBuilder<CommandSource, ?> build() {
+        return Commands.literal("metrics")
+                .executes(context -> show(context.getSource()))
+                .then(Commands.literal("enable").executes(context -> setEnabled(context.getSource(), true)))
+                .then(Commands.literal("disable").executes(context -> setEnabled(context.getSource(), false)))
+                .then(Commands.literal("reset").executes(context -> reset(context.getSource())))
+                .then(Commands.literal("dump").executes(context -> dump(context.getSource())));
+    }
+
+    private static int show(CommandSource source) {
+        if (!Metrics.isEnabled()) {
+            source.sendFeedback(new TranslationTextComponent("commands.tutorial.metrics.disabled"), false);
+            return 0;
+        }
+
+        source.sendFeedback(new TranslationTextComponent("commands.tutorial.metrics.header", String.format("%.1f", Metrics.getElapsedSeconds())), false);
+        List<String> lines = Metrics.report();
+        for (String line : lines) {
+            source.sendFeedback(new StringTextComponent(line), false);
+        }
+        return lines.size();
+    }
+
+    private static int setEnabled(CommandSource source, boolean enabled) {
+        Metrics.setEnabled(enabled);
+        source.sendFeedback(new TranslationTextComponent(enabled ? "commands.tutorial.metrics.enabled" : "commands.tutorial.metrics.disabled"), true);
+        return 1;
+    }
+
+    private static int reset(CommandSource source) {
+        Metrics.reset();
+        source.sendFeedback(new TranslationTextComponent("commands.tutorial.metrics.reset"), true);
+        return 1;
+    }
+
+    private static int dump(CommandSource source) {
+        String time = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        File file = source.getServer().getFile("tutorial-metrics-" + time + ".txt");
+
+        List<String> lines = new ArrayList<>();
+        lines.add("Tutorial Mod metrics, " + String.format("%.1f", Metrics.getElapsedSeconds()) + " seconds since reset"
+                + (Metrics.isEnabled() ? "" : " (disabled)"));
+        lines.addAll(Metrics.report());
+        try {
+            Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            TutorialMod.LOGGER.error("Failed to write metrics to {}", file, ex);
+            source.sendErrorMessage(new TranslationTextComponent("commands.tutorial.metrics.dump.failed", file.getName()));
+            return 0;
+        }
+
+        source.sendFeedback(new TranslationTextComponent("commands.tutorial.metrics.dump", file.getName()), true);
+        return 1;
+    }
+}
@@ -0,0 +1,64 @@
+package net.silentchaos512.tutorial.command;
+
+import com.mojang.brigadier.builder.ArgumentBuilder;
+import net.minecraft.command.CommandSource;
+import net.minecraft.command.Commands;
+import net.minecraft.util.text.TranslationTextComponent;
+import net.silentchaos512.tutorial.world.GemOreFeature;
+import net.silentchaos512.tutorial.world.GemOreRetrogen;
+
+/**
+ * {@code /tutorial retrogen [start|stop]}. Adds gem ores to chunks generated before they existed.
+ * With no arguments, shows the progress. See {@link GemOreRetrogen}.
+ */
+public final class RetrogenCommand {
+    private RetrogenCommand() {}
+
+    static ArgumentBuilder<CommandSource, ?> build() {
+        return Commands.literal("retrogen")
+                .executes(context -> status(context.getSource()))
+                .then(Commands.literal("start").executes(context -> start(context.getSource())))
+                .then(Commands.literal("stop").executes(context -> stop(context.getSource())));
+    }
+
+    private static int status(CommandSource source) {
+        GemOreRetrogen retrogen = GemOreRetrogen.get();
+        if (retrogen == null) return 0;
+
+        String region = retrogen.getCurrentRegion();
+        String key = retrogen.isRunning() ? "commands.tutorial.retrogen.running" : "commands.tutorial.retrogen.stopped";
+        source.sendFeedback(new TranslationTextComponent(key, region != null ? region : "-",
+                retrogen.getChunksProcessed(), retrogen.getChunksSkipped(), retrogen.getOresPlaced()), false);
+        return (int) Math.min(retrogen.getChunksProcessed(), Integer.MAX_VALUE);
+    }
+
+    private static int start(CommandSource source) {
+        GemOreRetrogen retrogen = GemOreRetrogen.get();
+        if (retrogen == null) return 0;
+
+        if (retrogen.isRunning()) {
+            source.sendErrorMessage(new TranslationTextComponent("commands.tutorial.retrogen.start.already"));
+            return 0;
+        }
+        if (!GemOreFeature.isEnabled()) {
+            source.sendErrorMessage(new TranslationTextComponent("commands.tutorial.retrogen.start.disabled"));
+            return 0;
+        }
+        retrogen.start();
+        source.sendFeedback(new TranslationTextComponent("commands.tutorial.retrogen.start"), true);
+        return 1;
+    }
+
+    private static int stop(CommandSource source) {
+        GemOreRetrogen retrogen = GemOreRetrogen.get();
+        if (retrogen == null) return 0;
+
+        if (!retrogen.isRunning()) {
+            source.sendErrorMessage(new TranslationTextComponent("commands.tutorial.retrogen.stop.already"));
+            return 0;
+        }
+        retrogen.stop();
+        source.sendFeedback(new TranslationTextComponent("commands.tutorial.retrogen.stop", retrogen.getChunksProcessed()), true);
+        return 1;
+    }
+}
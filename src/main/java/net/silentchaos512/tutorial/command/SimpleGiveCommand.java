@@ -2,33 +2,52 @@ package net.silentchaos512.tutorial.command;
 
 import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import com.mojang.brigadier.suggestion.SuggestionProvider;
 import net.minecraft.command.CommandSource;
 import net.minecraft.command.Commands;
 import net.minecraft.command.ISuggestionProvider;
 import net.minecraft.command.arguments.EntityArgument;
 import net.minecraft.command.arguments.ResourceLocationArgument;
+import net.minecraft.entity.Entity;
 import net.minecraft.entity.item.ItemEntity;
+import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.entity.player.ServerPlayerEntity;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.SoundCategory;
 import net.minecraft.util.SoundEvents;
 import net.minecraft.util.text.ITextComponent;
 import net.minecraft.util.text.StringTextComponent;
 import net.minecraft.util.text.TranslationTextComponent;
+import net.minecraftforge.items.ItemHandlerHelper;
 import net.minecraftforge.registries.ForgeRegistries;
+import net.silentchaos512.tutorial.Config;
+import net.silentchaos512.tutorial.TutorialMod;
+import net.silentchaos512.tutorial.metrics.Counter;
+import net.silentchaos512.tutorial.metrics.Metrics;
+import net.silentchaos512.tutorial.metrics.Timer;
+import net.silentchaos512.tutorial.util.IdPrefixIndex;
+import net.silentchaos512.tutorial.util.NbtTemplateCache;
+import net.silentchaos512.tutorial.util.TickScheduler;
 
+import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
 
 /**
  * A slightly modified version of vanilla's give command ({@link net.minecraft.command.impl.GiveCommand}).
- * This version does not support NBT, as we get the item using a different method. {@code
- * GiveCommand} uses {@link net.minecraft.command.arguments.ItemInput}, but we are using {@link
- * ResourceLocationArgument} for demonstration purposes. This is mainly to show off {@link
+ * {@code GiveCommand} uses {@link net.minecraft.command.arguments.ItemInput}, but we are using
+ * {@link ResourceLocationArgument} for demonstration purposes. This is mainly to show off {@link
  * SuggestionProvider}s, which can suggest possible values for the player to type, along with tab
- * completion.
+ * completion. NBT is an optional last argument instead, which is parsed through a {@link
+ * NbtTemplateCache}.
  * <p>
  * I have formatted the code in {@link #register(CommandDispatcher)} in a way I think is easier to
  * understand. By breaking lines where I do, different method calls "line up" correctly to show the
@@ -39,20 +58,50 @@ import java.util.Collection;
  * Also see the official Brigadier repo here: https://github.com/Mojang/brigadier
  */
 public final class SimpleGiveCommand {
+    private static final int MAX_SUGGESTIONS = 100;
+
+    private static final Counter EXECUTIONS = Metrics.counter("sgive.executions");
+    private static final Timer GIVE_TIMER = Metrics.timer("sgive.player");
+    private static final Counter ITEMS_GIVEN = Metrics.counter("sgive.items");
+    private static final Counter ITEMS_DROPPED = Metrics.counter("sgive.items_dropped");
+
+    private static volatile IdPrefixIndex itemIndex;
+
+    private static final NbtTemplateCache NBT_TEMPLATES = new NbtTemplateCache(() -> Config.COMMON.sgiveNbtCacheSize.get());
+
     /**
      * Provides suggestions for a command argument. In this case, item IDs. {@link
-     * ISuggestionProvider} offers several methods for us to use. At the time of writing, many of
-     * these methods still have obfuscated names. Here, we want the one that takes a {@code
-     * Stream<ResourceLocation>} as the first parameter.
+     * ISuggestionProvider} offers several methods for us to use, like {@code func_212476_a}, which
+     * takes a {@code Stream<ResourceLocation>}. But those check every item ID on every keystroke,
+     * which is slow in large mod packs. So we search an {@link IdPrefixIndex} instead, and add the
+     * matches to the builder ourselves.
      */
-    private static final SuggestionProvider<CommandSource> ITEM_ID_SUGGESTIONS = (context, builder) ->
-            ISuggestionProvider.func_212476_a(ForgeRegistries.ITEMS.getKeys().stream(), builder);
+    private static final SuggestionProvider<CommandSource> ITEM_ID_SUGGESTIONS = (context, builder) -> {
+        getItemIndex().find(builder.getRemaining(), MAX_SUGGESTIONS).forEach(builder::suggest);
+        return builder.buildFuture();
+    };
 
     private SimpleGiveCommand() {}
 
+    /**
+     * Builds the item ID index for suggestions. Items cannot be added after loading, so this is
+     * done once, in {@link net.minecraftforge.fml.event.lifecycle.FMLLoadCompleteEvent}.
+     */
+    public static void buildItemIndex() {
+        itemIndex = new IdPrefixIndex(ForgeRegistries.ITEMS.getKeys());
+        TutorialMod.LOGGER.debug("Indexed {} item IDs for /sgive suggestions", itemIndex.size());
+    }
+
+    private static IdPrefixIndex getItemIndex() {
+        if (itemIndex == null) {
+            buildItemIndex();
+        }
+        return itemIndex;
+    }
+
     /**
      * Called to register the command, which should be done in {@link net.minecraftforge.fml.event.server.FMLServerStartingEvent}.
-     * The syntax of this command is {@code /sgive <targets> <itemID> [<count>]}.
+     * The syntax of this command is {@code /sgive <targets> <itemID> [<count> [scheduled] [<nbt>]]}.
      *
      * @param dispatcher The {@link CommandDispatcher}, which is obtained from {@code
      *                   FMLServerStartingEvent}
@@ -74,7 +123,8 @@ public final class SimpleGiveCommand {
                                         context.getSource(),
                                         ResourceLocationArgument.getResourceLocation(context, "itemID"),
                                         EntityArgument.getPlayers(context, "targets"),
-                                        1
+                                        1,
+                                        null
                                 ))
                                 // Or we can optionally specify the number of the item to give
                                 .then(Commands.argument("count", IntegerArgumentType.integer())
@@ -83,8 +133,39 @@ public final class SimpleGiveCommand {
                                                 context.getSource(),
                                                 ResourceLocationArgument.getResourceLocation(context, "itemID"),
                                                 EntityArgument.getPlayers(context, "targets"),
-                                                IntegerArgumentType.getInteger(context, "count")
+                                                IntegerArgumentType.getInteger(context, "count"),
+                                                null
                                         ))
+                                        // Or NBT for the items, which takes the rest of the line
+                                        .then(Commands.argument("nbt", StringArgumentType.greedyString())
+                                                .executes(context -> giveItem(
+                                                        context.getSource(),
+                                                        ResourceLocationArgument.getResourceLocation(context, "itemID"),
+                                                        EntityArgument.getPlayers(context, "targets"),
+                                                        IntegerArgumentType.getInteger(context, "count"),
+                                                        StringArgumentType.getString(context, "nbt")
+                                                ))
+                                        )
+                                        // Adding "scheduled" spreads the work over several ticks
+                                        .then(Commands.literal("scheduled")
+                                                .executes(context -> giveItemScheduled(
+                                                        context.getSource(),
+                                                        ResourceLocationArgument.getResourceLocation(context, "itemID"),
+                                                        EntityArgument.getPlayers(context, "targets"),
+                                                        IntegerArgumentType.getInteger(context, "count"),
+                                                        null
+                                                ))
+                                                // Which can also have NBT
+                                                .then(Commands.argument("nbt", StringArgumentType.greedyString())
+                                                        .executes(context -> giveItemScheduled(
+                                                                context.getSource(),
+                                                                ResourceLocationArgument.getResourceLocation(context, "itemID"),
+                                                                EntityArgument.getPlayers(context, "targets"),
+                                                                IntegerArgumentType.getInteger(context, "count"),
+                                                                StringArgumentType.getString(context, "nbt")
+                                                        ))
+                                                )
+                                        )
                                 )
                         )
                 )
@@ -100,47 +181,26 @@ public final class SimpleGiveCommand {
      * @param itemId  The item ID
      * @param targets The player(s) to give to
      * @param count   The number of the item to give
-     * @return Size of {@code targets}, or 0 if the item ID is invalid
+     * @param nbt     The item's NBT, as an SNBT string, or null for none
+     * @return Size of {@code targets}, or 0 if the item ID is invalid or the count is too large
+     * @throws CommandSyntaxException If the NBT is not valid
      */
-    private static int giveItem(CommandSource source, ResourceLocation itemId, Collection<ServerPlayerEntity> targets, int count) {
-        Item item = ForgeRegistries.ITEMS.getValue(itemId);
-        if (item == null) {
-            source.sendErrorMessage(new StringTextComponent("Item '" + itemId + "' does not exist?"));
+    private static int giveItem(CommandSource source, ResourceLocation itemId, Collection<ServerPlayerEntity> targets, int count, @Nullable String nbt) throws CommandSyntaxException {
+        ItemStack template = getTemplate(source, itemId, nbt);
+        if (template.isEmpty()) {
             return 0;
         }
 
+        if (!checkCount(source, template, targets, count)) {
+            return 0;
+        }
+
+        EXECUTIONS.inc();
         for (ServerPlayerEntity player : targets) {
-            int remainingCount = count;
-
-            while (remainingCount > 0) {
-                @SuppressWarnings("deprecation") int stackCount = Math.min(item.getMaxStackSize(), remainingCount);
-                remainingCount -= stackCount;
-                ItemStack stack = new ItemStack(item, stackCount);
-                boolean addedToInventory = player.inventory.addItemStackToInventory(stack);
-                if (addedToInventory && stack.isEmpty()) {
-                    stack.setCount(1);
-                    ItemEntity entityItem = player.dropItem(stack, false);
-                    if (entityItem != null) {
-                        entityItem.makeFakeItem();
-                    }
-
-                    player.world.playSound(
-                            null, player.posX, player.posY, player.posZ,
-                            SoundEvents.ENTITY_ITEM_PICKUP, SoundCategory.PLAYERS,
-                            0.2F,
-                            ((player.getRNG().nextFloat() - player.getRNG().nextFloat()) * 0.7F + 1.0F) * 2.0F);
-                    player.container.detectAndSendChanges();
-                } else {
-                    ItemEntity entityItem = player.dropItem(stack, false);
-                    if (entityItem != null) {
-                        entityItem.setNoPickupDelay();
-                        entityItem.setOwnerId(player.getUniqueID());
-                    }
-                }
-            }
+            giveToPlayer(player, template, count);
         }
 
-        ITextComponent itemText = new ItemStack(item, count).getTextComponent();
+        ITextComponent itemText = getTextComponent(template, count);
         if (targets.size() == 1) {
             source.sendFeedback(new TranslationTextComponent("commands.give.success.single", count, itemText, targets.iterator().next().getDisplayName()), true);
         } else {
@@ -149,4 +209,294 @@ public final class SimpleGiveCommand {
 
         return targets.size();
     }
+
+    /**
+     * Like {@link #giveItem}, but each player is a task for the {@link TickScheduler}, so giving
+     * items to hundreds of players does not all happen in one tick. The command source is told how
+     * it is going, then when it is done.
+     * <p>
+     * Players may log out before their turn comes. So the tasks only keep each player's UUID, and
+     * look the player up when it runs. Players who are gone are skipped.
+     *
+     * @param source  The command source
+     * @param itemId  The item ID
+     * @param targets The player(s) to give to
+     * @param count   The number of the item to give
+     * @param nbt     The item's NBT, as an SNBT string, or null for none
+     * @return Size of {@code targets}, or 0 if the item ID is invalid or the count is too large
+     * @throws CommandSyntaxException If the NBT is not valid
+     */
+    private static int giveItemScheduled(CommandSource source, ResourceLocation itemId, Collection<ServerPlayerEntity> targets, int count, @Nullable String nbt) throws CommandSyntaxException {
+        ItemStack template = getTemplate(source, itemId, nbt);
+        if (template.isEmpty()) {
+            return 0;
+        }
+
+        if (!checkCount(source, template, targets, count)) {
+            return 0;
+        }
+
+        EXECUTIONS.inc();
+        MinecraftServer server = source.getServer();
+        int[] loggedOut = {0};
+        List<Runnable> tasks = new ArrayList<>();
+        for (ServerPlayerEntity target : targets) {
+            UUID playerId = target.getUniqueID();
+            tasks.add(() -> {
+                ServerPlayerEntity player = server.getPlayerList().getPlayerByUUID(playerId);
+                if (player != null) {
+                    giveToPlayer(player, template, count);
+                } else {
+                    ++loggedOut[0];
+                }
+            });
+        }
+
+        ITextComponent itemText = getTextComponent(template, count);
+        source.sendFeedback(new TranslationTextComponent("commands.tutorial.sgive.scheduled", count, itemText, targets.size()), true);
+        TickScheduler.submit("sgive " + itemId, tasks, new TickScheduler.Listener() {
+            @Override
+            public void onProgress(TickScheduler.Job job) {
+                sendIfOnline(source, new TranslationTextComponent("commands.tutorial.sgive.progress", itemText, job.getCompleted(), job.getTotal()), false);
+            }
+
+            @Override
+            public void onComplete(TickScheduler.Job job) {
+                int given = job.getTotal() - loggedOut[0] - job.getFailed();
+                sendIfOnline(source, new TranslationTextComponent("commands.tutorial.sgive.done", count, itemText, given, loggedOut[0]), true);
+            }
+        });
+
+        return targets.size();
+    }
+
+    /**
+     * Checks that every player can be given the whole count, with what fits in their inventory
+     * and at most {@code maxDrops} item entities for the rest. Sends an error if not. Refusing is
+     * better than flooding the world with entities, or giving less than was asked for.
+     * <p>
+     * Scheduled gives are checked when the command runs. If an inventory fills up before the
+     * player's turn, they still get everything, with a few more entities.
+     *
+     * @return True if the count is fine for everyone
+     */
+    private static boolean checkCount(CommandSource source, ItemStack template, Collection<ServerPlayerEntity> targets, int count) {
+        int maxDrops = Config.COMMON.sgiveMaxDrops.get();
+        long maxCount = Long.MAX_VALUE;
+        for (ServerPlayerEntity player : targets) {
+            maxCount = Math.min(maxCount, getSpace(player.inventory, template) + (long) maxDrops * getPerEntity(template));
+        }
+        if (count > maxCount) {
+            source.sendErrorMessage(new TranslationTextComponent("commands.tutorial.sgive.too_many", count, maxCount));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the item to give, with its NBT. The template is shared by every stack given by this
+     * command, so it must not be modified or given away. Use copies of it.
+     *
+     * @return The template stack, or an empty stack if the item ID is invalid
+     * @throws CommandSyntaxException If the NBT is not valid
+     */
+    private static ItemStack getTemplate(CommandSource source, ResourceLocation itemId, @Nullable String nbt) throws CommandSyntaxException {
+        Item item = ForgeRegistries.ITEMS.getValue(itemId);
+        if (item == null) {
+            source.sendErrorMessage(new StringTextComponent("Item '" + itemId + "' does not exist?"));
+            return ItemStack.EMPTY;
+        }
+
+        ItemStack template = new ItemStack(item);
+        if (nbt != null) {
+            // Copy the cached tag once, which still skips parsing it. setTag is not safe to give the
+            // shared tag to, since it writes the damage of damageable items into it.
+            template.setTag(NBT_TEMPLATES.get(nbt).copy());
+        }
+        return template;
+    }
+
+    private static ITextComponent getTextComponent(ItemStack template, int count) {
+        ItemStack stack = template.copy();
+        stack.setCount(count);
+        return stack.getTextComponent();
+    }
+
+    /**
+     * Sends feedback, unless the command came from a player who has since logged out.
+     */
+    private static void sendIfOnline(CommandSource source, ITextComponent message, boolean allowLogging) {
+        Entity entity = source.getEntity();
+        if (entity instanceof ServerPlayerEntity && source.getServer().getPlayerList().getPlayerByUUID(entity.getUniqueID()) == null) {
+            return;
+        }
+        source.sendFeedback(message, allowLogging);
+    }
+
+    /**
+     * Gives items to one player. Vanilla's give command handles one stack at a time, and each
+     * stack plays a sound, syncs the player's inventory and may spawn an entity. That is fine for a
+     * few stacks, but {@code /sgive @a minecraft:cobblestone 100000} would flood the server with
+     * entities, sounds and packets.
+     * <p>
+     * Instead, we fill the inventory directly in one pass (see {@link #fillInventory}), and drop
+     * whatever is left in a few large item entities. The player gets one sound and one inventory
+     * sync, no matter how many items they were given. The number of entities is limited by {@link
+     * #checkCount} before anything is given.
+     *
+     * @param player   The player
+     * @param template The item to give, which is copied
+     * @param count    The number of the item to give
+     */
+    private static void giveToPlayer(ServerPlayerEntity player, ItemStack template, int count) {
+        long start = GIVE_TIMER.start();
+        int added = fillInventory(player.inventory, template, count);
+        int dropped = dropOverflow(player, template, count - added);
+
+        if (added > 0) {
+            // Pickup animation and sound, once
+            ItemEntity entityItem = player.dropItem(new ItemStack(template.getItem()), false);
+            if (entityItem != null) {
+                entityItem.makeFakeItem();
+            }
+
+            player.world.playSound(
+                    null, player.posX, player.posY, player.posZ,
+                    SoundEvents.ENTITY_ITEM_PICKUP, SoundCategory.PLAYERS,
+                    0.2F,
+                    ((player.getRNG().nextFloat() - player.getRNG().nextFloat()) * 0.7F + 1.0F) * 2.0F);
+            player.container.detectAndSendChanges();
+        }
+
+        GIVE_TIMER.stop(start);
+        ITEMS_GIVEN.add(added + dropped);
+        ITEMS_DROPPED.add(dropped);
+    }
+
+    /**
+     * Drops items which did not fit in the player's inventory. Item entities can hold more than a
+     * normal stack, but item counts are saved as a byte, so no more than {@link Byte#MAX_VALUE} go
+     * in each entity. Items which do not stack are dropped one at a time.
+     *
+     * @return The number of items dropped, which is always {@code count}
+     */
+    private static int dropOverflow(ServerPlayerEntity player, ItemStack template, int count) {
+        int perEntity = getPerEntity(template);
+        int dropped = 0;
+
+        while (dropped < count) {
+            int entityCount = Math.min(perEntity, count - dropped);
+            dropped += entityCount;
+            ItemStack stack = template.copy();
+            stack.setCount(entityCount);
+            ItemEntity entityItem = player.dropItem(stack, false);
+            if (entityItem != null) {
+                entityItem.setNoPickupDelay();
+                entityItem.setOwnerId(player.getUniqueID());
+            }
+        }
+
+        return dropped;
+    }
+
+    private static int getPerEntity(ItemStack template) {
+        return template.getMaxStackSize() > 1 ? Byte.MAX_VALUE : 1;
+    }
+
+    /**
+     * Gets the number of an item which would fit in an inventory, counting the same slots as
+     * {@link #fillInventory(PlayerInventory, ItemStack, int)}.
+     *
+     * @param inventory The player's inventory
+     * @param template  The item to give
+     * @return The number of items which would fit
+     */
+    public static int getSpace(PlayerInventory inventory, ItemStack template) {
+        int maxStackSize = Math.min(template.getMaxStackSize(), inventory.getInventoryStackLimit());
+        int space = getSpace(inventory.offHandInventory.get(0), template, maxStackSize);
+        for (ItemStack stack : inventory.mainInventory) {
+            space += stack.isEmpty() ? maxStackSize : getSpace(stack, template, maxStackSize);
+        }
+        return space;
+    }
+
+    private static int getSpace(ItemStack stack, ItemStack template, int maxStackSize) {
+        if (stack.isEmpty() || !ItemHandlerHelper.canItemStacksStack(stack, template)) {
+            return 0;
+        }
+        return Math.max(0, maxStackSize - stack.getCount());
+    }
+
+    /**
+     * Puts as many of the item as possible in an inventory. This works out where the items go in
+     * one pass over the inventory, then fills those slots directly, instead of adding one stack at
+     * a time. Slots are used in the same order as {@link PlayerInventory#addItemStackToInventory}:
+     * matching stacks in the selected hotbar slot and offhand first, then other matching stacks,
+     * then empty slots.
+     * <p>
+     * This does not sync the inventory to the client, so call {@code
+     * player.container.detectAndSendChanges()} afterwards.
+     *
+     * @param inventory The player's inventory
+     * @param item      The item to give
+     * @param count     The number of the item to give
+     * @return The number of items added to the inventory
+     */
+    public static int fillInventory(PlayerInventory inventory, Item item, int count) {
+        return fillInventory(inventory, new ItemStack(item), count);
+    }
+
+    /**
+     * Puts as many of an item as possible in an inventory, like {@link #fillInventory(PlayerInventory,
+     * Item, int)}, but the item can have NBT. Stacks only merge if their NBT matches. The template
+     * is never modified or put in the inventory, only copies of it.
+     *
+     * @param inventory The player's inventory
+     * @param template  The item to give. Its count does not matter.
+     * @param count     The number of the item to give
+     * @return The number of items added to the inventory
+     */
+    public static int fillInventory(PlayerInventory inventory, ItemStack template, int count) {
+        int maxStackSize = Math.min(template.getMaxStackSize(), inventory.getInventoryStackLimit());
+        int remaining = count;
+
+        // Merge into matching stacks
+        remaining = mergeInto(inventory.getCurrentItem(), template, maxStackSize, remaining);
+        remaining = mergeInto(inventory.offHandInventory.get(0), template, maxStackSize, remaining);
+        for (int i = 0; i < inventory.mainInventory.size() && remaining > 0; ++i) {
+            if (i != inventory.currentItem) {
+                remaining = mergeInto(inventory.mainInventory.get(i), template, maxStackSize, remaining);
+            }
+        }
+
+        // Then fill empty slots
+        for (int i = 0; i < inventory.mainInventory.size() && remaining > 0; ++i) {
+            if (inventory.mainInventory.get(i).isEmpty()) {
+                int stackCount = Math.min(maxStackSize, remaining);
+                ItemStack stack = template.copy();
+                stack.setCount(stackCount);
+                stack.setAnimationsToGo(5);
+                inventory.mainInventory.set(i, stack);
+                remaining -= stackCount;
+            }
+        }
+
+        if (remaining != count) {
+            inventory.markDirty();
+        }
+        return count - remaining;
+    }
+
+    private static int mergeInto(ItemStack stack, ItemStack template, int maxStackSize, int remaining) {
+        if (remaining <= 0 || stack.isEmpty() || !ItemHandlerHelper.canItemStacksStack(stack, template)) {
+            return remaining;
+        }
+        int added = Math.min(maxStackSize - stack.getCount(), remaining);
+        if (added <= 0) {
+            return remaining;
+        }
+        stack.grow(added);
+        stack.setAnimationsToGo(5);
+        return remaining - added;
+    }
 }
@@ -0,0 +1,204 @@
+package net.silentchaos512.tutorial.command;
+
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.builder.ArgumentBuilder;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.command.CommandSource;
+import net.minecraft.command.Commands;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.tags.BlockTags;
+import net.minecraft.tags.Tag;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.text.TranslationTextComponent;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.server.ServerChunkProvider;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraftforge.registries.ForgeRegistries;
+import net.silentchaos512.tutorial.TutorialMod;
+import net.silentchaos512.tutorial.init.Gem;
+import net.silentchaos512.tutorial.world.LoadedChunks;
+import net.silentchaos512.tutorial.world.OreSurvey;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * {@code /tutorial survey radius <chunks> [blocks]} and {@code /tutorial survey loaded [blocks]}.
+ * Counts blocks in loaded chunks around the player (or command block), or in every loaded chunk of
+ * the dimension. Blocks are a space-separated list of block IDs and block tags, like {@code
+ * tutorial:ruby_ore #forge:ores}. With no blocks, counts all gem ores.
+ * <p>
+ * The top chunks are shown in chat. Every chunk's count, and a heatmap, are written to a file in
+ * the server directory. Counting happens on worker threads (see {@link OreSurvey}), so the results
+ * come a moment after the command.
+ */
+public final class SurveyCommand {
+    private static final int MAX_RADIUS = 64;
+    private static final int TOP_CHUNKS = 5;
+
+    private SurveyCommand() {}
+
+    static ArgumentBuilder<CommandSource, ?> build() {
+        return Commands.literal("survey")
+                .then(Commands.literal("radius")
+                        .then(Commands.argument("radius", IntegerArgumentType.integer(0, MAX_RADIUS))
+                                .executes(context -> survey(context.getSource(), IntegerArgumentType.getInteger(context, "radius"), null))
+                                .then(Commands.argument("blocks", StringArgumentType.greedyString())
+                                        .executes(context -> survey(context.getSource(), IntegerArgumentType.getInteger(context, "radius"), StringArgumentType.getString(context, "blocks")))
+                                )
+                        )
+                )
+                .then(Commands.literal("loaded")
+                        .executes(context -> survey(context.getSource(), -1, null))
+                        .then(Commands.argument("blocks", StringArgumentType.greedyString())
+                                .executes(context -> survey(context.getSource(), -1, StringArgumentType.getString(context, "blocks")))
+                        )
+                );
+    }
+
+    /**
+     * @param radius The radius in chunks, or -1 for all loaded chunks
+     * @param blocks Block IDs and tags, or null for gem ores
+     */
+    private static int survey(CommandSource source, int radius, @Nullable String blocks) {
+        Set<BlockState> targets = new LinkedHashSet<>();
+        String description = blocks != null ? blocks : "gem ores";
+        if (blocks != null) {
+            for (String entry : blocks.trim().split("\\s+")) {
+                if (!addTargets(entry, targets)) {
+                    source.sendErrorMessage(new TranslationTextComponent("commands.tutorial.survey.unknown", entry));
+                    return 0;
+                }
+            }
+        } else {
+            for (Gem gem : Gem.values()) {
+                targets.addAll(gem.getOreBlock().getStateContainer().getValidStates());
+            }
+        }
+
+        ServerWorld world = source.getWorld();
+        OreSurvey survey = new OreSurvey(targets);
+        int chunks = radius < 0
+                ? addLoadedChunks(world, survey)
+                : addChunksInRadius(world, new ChunkPos(new BlockPos(source.getPos())), radius, survey);
+        if (chunks == 0) {
+            source.sendErrorMessage(new TranslationTextComponent("commands.tutorial.survey.none"));
+            return 0;
+        }
+        source.sendFeedback(new TranslationTextComponent("commands.tutorial.survey.start", chunks, description), true);
+
+        MinecraftServer server = source.getServer();
+        Date date = new Date();
+        File file = server.getFile("tutorial-survey-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(date) + ".txt");
+        List<String> header = Arrays.asList(
+                "Tutorial Mod survey, " + date,
+                "Dimension: " + world.getDimension().getType().getRegistryName(),
+                "Blocks: " + description,
+                radius < 0 ? "Area: all loaded chunks" : "Area: loaded chunks within " + radius + " chunks of " + source.getPos()
+        );
+
+        survey.count(ForkJoinPool.commonPool()).thenAccept(result -> {
+            // Write the file on the worker thread too, it could be big
+            boolean written = true;
+            try {
+                result.write(file.toPath(), header);
+            } catch (IOException ex) {
+                TutorialMod.LOGGER.error("Failed to write survey to {}", file, ex);
+                written = false;
+            }
+            boolean fileWritten = written;
+            // Messages must be sent on the server thread
+            server.execute(() -> sendResult(source, result, file, fileWritten));
+        }).exceptionally(ex -> {
+            TutorialMod.LOGGER.error("Survey failed", ex);
+            server.execute(() -> source.sendErrorMessage(new TranslationTextComponent("commands.tutorial.survey.failed")));
+            return null;
+        });
+        return chunks;
+    }
+
+    /**
+     * Adds the states of a block, or every block in a tag.
+     *
+     * @return False if the block or tag does not exist
+     */
+    private static boolean addTargets(String entry, Set<BlockState> targets) {
+        boolean isTag = entry.startsWith("#");
+        ResourceLocation id = ResourceLocation.tryCreate(isTag ? entry.substring(1) : entry);
+        if (id == null) {
+            return false;
+        }
+
+        if (isTag) {
+            Tag<Block> tag = BlockTags.getCollection().get(id);
+            if (tag == null) {
+                return false;
+            }
+            tag.getAllElements().forEach(block -> targets.addAll(block.getStateContainer().getValidStates()));
+        } else {
+            // The block registry returns air for unknown IDs, so check first
+            if (!ForgeRegistries.BLOCKS.containsKey(id)) {
+                return false;
+            }
+            targets.addAll(ForgeRegistries.BLOCKS.getValue(id).getStateContainer().getValidStates());
+        }
+        return true;
+    }
+
+    private static int addLoadedChunks(ServerWorld world, OreSurvey survey) {
+        ServerChunkProvider provider = world.getChunkProvider();
+        int count = 0;
+        for (long pos : LoadedChunks.get(world.getDimension().getType())) {
+            Chunk chunk = provider.getChunk(ChunkPos.getX(pos), ChunkPos.getZ(pos), false);
+            if (chunk != null) {
+                survey.add(chunk);
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adds loaded chunks in a square around the center. Chunks which are not loaded are left out,
+     * rather than loading them.
+     */
+    private static int addChunksInRadius(ServerWorld world, ChunkPos center, int radius, OreSurvey survey) {
+        ServerChunkProvider provider = world.getChunkProvider();
+        int count = 0;
+        for (int z = center.z - radius; z <= center.z + radius; ++z) {
+            for (int x = center.x - radius; x <= center.x + radius; ++x) {
+                Chunk chunk = provider.getChunk(x, z, false);
+                if (chunk != null) {
+                    survey.add(chunk);
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static void sendResult(CommandSource source, OreSurvey.Result result, File file, boolean fileWritten) {
+        source.sendFeedback(new TranslationTextComponent("commands.tutorial.survey.done", result.getTotal(), result.getChunkCount(),
+                result.getSectionsScanned(), result.getSectionsSkipped()), true);
+        for (OreSurvey.ChunkCount chunk : result.getTop(TOP_CHUNKS)) {
+            source.sendFeedback(new TranslationTextComponent("commands.tutorial.survey.chunk", chunk.pos.x, chunk.pos.z, chunk.count), false);
+        }
+        if (fileWritten) {
+            source.sendFeedback(new TranslationTextComponent("commands.tutorial.survey.file", file.getName()), false);
+        } else {
+            source.sendErrorMessage(new TranslationTextComponent("commands.tutorial.survey.file.failed", file.getName()));
+        }
+    }
+}
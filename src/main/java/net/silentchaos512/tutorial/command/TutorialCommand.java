@@ -0,0 +1,24 @@
+package net.silentchaos512.tutorial.command;
+
+import com.mojang.brigadier.CommandDispatcher;
+import net.minecraft.command.CommandSource;
+import net.minecraft.command.Commands;
+
+/**
+ * The {@code /tutorial} command, which groups the mod's admin tools as subcommands. Each subcommand
+ * is built in its own class, like {@link MetricsCommand}, and added here.
+ */
+public final class TutorialCommand {
+    private TutorialCommand() {}
+
+    public static void register(CommandDispatcher<CommandSource> dispatcher) {
+        dispatcher.register(Commands.literal("tutorial")
+                // Admin tools, so a higher permission level than /sgive
+                .requires(source -> source.hasPermissionLevel(3))
+                .then(MetricsCommand.build())
+                .then(WorldGenCommand.build())
+                .then(RetrogenCommand.build())
+                .then(SurveyCommand.build())
+        );
+    }
+}
@@ -0,0 +1,167 @@
+package net.silentchaos512.tutorial.command;
+
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.builder.ArgumentBuilder;
+import net.minecraft.command.CommandSource;
+import net.minecraft.command.Commands;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.text.TranslationTextComponent;
+import net.minecraft.world.dimension.DimensionType;
+import net.minecraft.world.chunk.ChunkStatus;
+import net.minecraft.world.server.ServerChunkProvider;
+import net.minecraft.world.server.ServerWorld;
+import net.silentchaos512.tutorial.TutorialMod;
+import net.silentchaos512.tutorial.util.TickScheduler;
+import net.silentchaos512.tutorial.world.GemOreFeature;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * {@code /tutorial worldgen benchmark [chunks]}. Generates the same number of chunks with gem ores
+ * turned off, then on, and reports chunks per second for each. Use this to see what the ore
+ * features cost.
+ * <p>
+ * Each run uses a random, far away area, so the chunks are new. They are saved like any other
+ * chunk, so run this in a throwaway world.
+ * <p>
+ * Generating thousands of chunks at once would hold up the server for minutes, long enough for the
+ * watchdog to kill it. So chunks are generated in small batches, which are tasks for the {@link
+ * TickScheduler}. Each batch is timed on its own, and the times are added up for the results.
+ * <p>
+ * Chunk generation happens on worker threads, which are generating players' chunks at the same
+ * time. So gem ores are never turned off globally. Instead, each run overrides the setting for its
+ * own chunks only (see {@link GemOreFeature#setOverrides}), from when the job is queued until it
+ * completes.
+ */
+public final class WorldGenCommand {
+    private static final int DEFAULT_CHUNKS = 256;
+    private static final int MAX_CHUNKS = 4096;
+    // A few chunks per batch keeps each one well under a tick, even on a slow machine
+    private static final int BATCH_SIZE = 4;
+    // Chunks are picked this far from the origin at most, well inside the world border
+    private static final int MAX_CHUNK_OFFSET = 50000;
+
+    private WorldGenCommand() {}
+
+    static ArgumentBuilder<CommandSource, ?> build() {
+        return Commands.literal("worldgen")
+                .then(Commands.literal("benchmark")
+                        .executes(context -> benchmark(context.getSource(), DEFAULT_CHUNKS))
+                        .then(Commands.argument("chunks", IntegerArgumentType.integer(1, MAX_CHUNKS))
+                                .executes(context -> benchmark(context.getSource(), IntegerArgumentType.getInteger(context, "chunks")))
+                        )
+                );
+    }
+
+    private static int benchmark(CommandSource source, int chunks) {
+        MinecraftServer server = source.getServer();
+        DimensionType dimension = source.getWorld().getDimension().getType();
+        Random random = new Random();
+        // Warm up first, or whichever run goes first is slower
+        Run warmUp = new Run("warm-up", true, Math.max(16, chunks / 4), random);
+        Run off = new Run("off", false, chunks, random);
+        Run on = new Run("on", true, chunks, random);
+
+        Run[] runs = {warmUp, off, on};
+        List<Runnable> tasks = new ArrayList<>();
+        for (Run run : runs) {
+            GemOreFeature.setOverrides(dimension, run.getChunkPositions(), run.oresEnabled);
+            for (int first = 0; first < run.chunks; first += BATCH_SIZE) {
+                int from = first;
+                tasks.add(() -> run.generateBatch(server.getWorld(dimension), from));
+            }
+        }
+
+        source.sendFeedback(new TranslationTextComponent("commands.tutorial.worldgen.benchmark.start", chunks, BATCH_SIZE), true);
+        TickScheduler.submit("worldgen benchmark", tasks, new TickScheduler.Listener() {
+            @Override
+            public void onProgress(TickScheduler.Job job) {
+                source.sendFeedback(new TranslationTextComponent("commands.tutorial.worldgen.benchmark.progress", job.getCompleted(), job.getTotal()), false);
+            }
+
+            @Override
+            public void onComplete(TickScheduler.Job job) {
+                for (Run run : runs) {
+                    GemOreFeature.clearOverrides(dimension, run.getChunkPositions());
+                }
+                sendResults(source, off, on);
+            }
+        });
+        return chunks;
+    }
+
+    private static void sendResults(CommandSource source, Run off, Run on) {
+        double rateOff = off.getRate();
+        double rateOn = on.getRate();
+        sendResult(source, off);
+        sendResult(source, on);
+        String cost = String.format("%.1f", (1 - rateOn / rateOff) * 100);
+        source.sendFeedback(new TranslationTextComponent("commands.tutorial.worldgen.benchmark.cost", cost), true);
+        TutorialMod.LOGGER.info("World generation benchmark, {} chunks: {} chunks/s with gem ores off, {} chunks/s on ({}% slower)",
+                on.chunks, String.format("%.1f", rateOff), String.format("%.1f", rateOn), cost);
+    }
+
+    private static void sendResult(CommandSource source, Run run) {
+        source.sendFeedback(new TranslationTextComponent("commands.tutorial.worldgen.benchmark.result",
+                run.name, run.chunks, String.format("%.2f", run.nanos / 1e9), String.format("%.1f", run.getRate()),
+                run.batches, String.format("%.1f", run.nanos / 1e6 / run.batches), String.format("%.1f", run.slowestBatchNanos / 1e6)), true);
+    }
+
+    /**
+     * One run of the benchmark: a square of new chunks, generated with gem ores on or off. Chunks
+     * are only generated up to the features stage, which is where ores are placed. Lighting and
+     * the rest are the same with or without ores, and would just add noise.
+     */
+    private static final class Run {
+        private final String name;
+        private final boolean oresEnabled;
+        private final int chunks;
+        private final int side;
+        private final int startX;
+        private final int startZ;
+        private long nanos;
+        private long slowestBatchNanos;
+        private int batches;
+
+        private Run(String name, boolean oresEnabled, int chunks, Random random) {
+            this.name = name;
+            this.oresEnabled = oresEnabled;
+            this.chunks = chunks;
+            this.side = MathHelper.ceil(Math.sqrt(chunks));
+            this.startX = random.nextInt(2 * MAX_CHUNK_OFFSET) - MAX_CHUNK_OFFSET;
+            this.startZ = random.nextInt(2 * MAX_CHUNK_OFFSET) - MAX_CHUNK_OFFSET;
+        }
+
+        private void generateBatch(ServerWorld world, int first) {
+            ServerChunkProvider provider = world.getChunkProvider();
+            int last = Math.min(first + BATCH_SIZE, this.chunks);
+            long start = System.nanoTime();
+            for (int i = first; i < last; ++i) {
+                provider.getChunk(this.startX + i % this.side, this.startZ + i / this.side, ChunkStatus.FEATURES, true);
+            }
+
+            long batchNanos = System.nanoTime() - start;
+            this.nanos += batchNanos;
+            this.slowestBatchNanos = Math.max(this.slowestBatchNanos, batchNanos);
+            ++this.batches;
+            TutorialMod.LOGGER.debug("World generation benchmark, gem ores {}, batch {}: {} chunks in {} ms",
+                    this.name, this.batches, last - first, String.format("%.1f", batchNanos / 1e6));
+        }
+
+        private List<ChunkPos> getChunkPositions() {
+            List<ChunkPos> list = new ArrayList<>(this.chunks);
+            for (int i = 0; i < this.chunks; ++i) {
+                list.add(new ChunkPos(this.startX + i % this.side, this.startZ + i / this.side));
+            }
+            return list;
+        }
+
+        private double getRate() {
+            return this.chunks / (this.nanos / 1e9);
+        }
+    }
+}
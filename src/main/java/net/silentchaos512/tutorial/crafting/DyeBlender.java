@@ -0,0 +1,129 @@
+package net.silentchaos512.tutorial.crafting;
+
+import net.minecraft.item.DyeColor;
+
+/**
+ * Mixes dye colors the same way vanilla dyes leather armor. Used to recolor backpacks.
+ * <p>
+ * Vanilla does this with a lot of float math for every dye. But each dye always adds the same
+ * numbers, so we work those out once for every {@link DyeColor} and keep them in integer tables.
+ * The tables are built with the exact same float expressions vanilla uses, so blending gives the
+ * same colors, down to the last bit. Only the final scaling step still uses floats, since changing
+ * that would change the rounding.
+ * <p>
+ * Dyes are passed as counts for each color (indexed by {@link DyeColor#getId()}), so any number of
+ * dyes can be mixed at once without building a list of stacks.
+ */
+public final class DyeBlender {
+    private static final DyeColor[] COLORS = DyeColor.values();
+    /** Red, green and blue of each dye, as vanilla converts them to ints */
+    private static final int[] DYE_RGB = new int[COLORS.length * 3];
+    /** The largest channel of each dye */
+    private static final int[] DYE_MAX = new int[COLORS.length];
+    /** Vanilla's float round trip for each channel value of an existing color */
+    private static final int[] CHANNEL = new int[256];
+
+    static {
+        for (DyeColor color : COLORS) {
+            float[] componentValues = color.getColorComponentValues();
+            int r = (int) (componentValues[0] * 255.0F);
+            int g = (int) (componentValues[1] * 255.0F);
+            int b = (int) (componentValues[2] * 255.0F);
+            DYE_RGB[color.getId() * 3] = r;
+            DYE_RGB[color.getId() * 3 + 1] = g;
+            DYE_RGB[color.getId() * 3 + 2] = b;
+            DYE_MAX[color.getId()] = Math.max(r, Math.max(g, b));
+        }
+        for (int i = 0; i < 256; ++i) {
+            float f = (float) i / 255.0F;
+            CHANNEL[i] = (int) (0.0F + f * 255.0F);
+        }
+    }
+
+    private DyeBlender() {}
+
+    /**
+     * Gets the number of dye colors, which is the length of the counts arrays used here.
+     *
+     * @return The number of dye colors
+     */
+    public static int getColorCount() {
+        return COLORS.length;
+    }
+
+    /**
+     * Mixes dyes into a color.
+     *
+     * @param baseColor The current color. White (the dye's firework color) counts as no color.
+     * @param dyeCounts The number of each dye, indexed by {@link DyeColor#getId()}
+     * @return The new color, or -1 if there is nothing to mix
+     */
+    public static int blend(int baseColor, int[] dyeCounts) {
+        int sumR = 0;
+        int sumG = 0;
+        int sumB = 0;
+        int maxColorSum = 0;
+        int colorCount = 0;
+
+        for (int i = 0; i < dyeCounts.length; ++i) {
+            int count = dyeCounts[i];
+            if (count > 0) {
+                maxColorSum += DYE_MAX[i] * count;
+                sumR += DYE_RGB[i * 3] * count;
+                sumG += DYE_RGB[i * 3 + 1] * count;
+                sumB += DYE_RGB[i * 3 + 2] * count;
+                colorCount += count;
+            }
+        }
+
+        return finish(baseColor, sumR, sumG, sumB, maxColorSum, colorCount);
+    }
+
+    /**
+     * Mixes a single dye color, many times over. Handy for recoloring a lot of backpacks at once
+     * from commands.
+     *
+     * @param baseColor The current color
+     * @param dye       The dye
+     * @param count     The number of dyes
+     * @return The new color, or -1 if there is nothing to mix
+     */
+    public static int blend(int baseColor, DyeColor dye, int count) {
+        if (count <= 0) {
+            return finish(baseColor, 0, 0, 0, 0, 0);
+        }
+        int i = dye.getId();
+        return finish(baseColor, DYE_RGB[i * 3] * count, DYE_RGB[i * 3 + 1] * count,
+                DYE_RGB[i * 3 + 2] * count, DYE_MAX[i] * count, count);
+    }
+
+    /**
+     * Adds the base color to the dye sums, then averages and scales them like vanilla.
+     */
+    private static int finish(int baseColor, int sumR, int sumG, int sumB, int maxColorSum, int colorCount) {
+        if (baseColor != DyeColor.WHITE.getFireworkColor()) {
+            int r = CHANNEL[baseColor >> 16 & 255];
+            int g = CHANNEL[baseColor >> 8 & 255];
+            int b = CHANNEL[baseColor & 255];
+            maxColorSum += Math.max(r, Math.max(g, b));
+            sumR += r;
+            sumG += g;
+            sumB += b;
+            ++colorCount;
+        }
+
+        if (colorCount == 0) {
+            return -1;
+        }
+
+        int r = sumR / colorCount;
+        int g = sumG / colorCount;
+        int b = sumB / colorCount;
+        float maxAverage = (float) maxColorSum / (float) colorCount;
+        float max = (float) Math.max(r, Math.max(g, b));
+        r = (int) ((float) r * maxAverage / max);
+        g = (int) ((float) g * maxAverage / max);
+        b = (int) ((float) b * maxAverage / max);
+        return (r << 16) + (g << 8) + b;
+    }
+}
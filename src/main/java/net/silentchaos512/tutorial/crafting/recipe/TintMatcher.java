@@ -0,0 +1,94 @@
+package net.silentchaos512.tutorial.crafting.recipe;
+
+import net.minecraft.item.DyeColor;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.tags.TagCollection;
+import net.silentchaos512.tutorial.TutorialMod;
+import net.silentchaos512.tutorial.imc.BackpackRules;
+import net.silentchaos512.tutorial.util.ItemEntries;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A {@link TintRecipe}'s targets and modifiers, compiled down to item IDs. Checking a slot is then
+ * just a bit lookup, instead of an {@code instanceof} check and a few tag lookups.
+ * <p>
+ * Tags can change when data packs reload, so a matcher is only good for the tag generation it was
+ * compiled with. {@link TintRecipe} compiles a new one when the tags change. The generation is
+ * compared rather than the collection itself, because /reload refills the same collection.
+ * <p>
+ * Tint sources registered by other mods (see {@link net.silentchaos512.tutorial.imc.BackpackImc})
+ * are modifiers in every tint recipe, with the dye color they were registered with.
+ */
+final class TintMatcher {
+    private final int tagGeneration;
+    private final BackpackRules rules;
+    private final BitSet targets = new BitSet();
+    private final BitSet modifiers = new BitSet();
+    /** The dye color of each modifier, by item ID, or -1 if the modifier has no color */
+    private final byte[] dyeColors;
+
+    private TintMatcher(int tagGeneration, TagCollection<Item> tags, List<String> targets, List<String> modifiers) {
+        this.tagGeneration = tagGeneration;
+        this.rules = BackpackRules.get();
+        targets.forEach(entry -> addItems(entry, tags, this.targets));
+        modifiers.forEach(entry -> addItems(entry, tags, this.modifiers));
+        this.modifiers.or(this.rules.getTintSources());
+
+        // Items are never both. Targets win, since tinting a tinted item with itself makes no sense.
+        this.modifiers.andNot(this.targets);
+
+        this.dyeColors = new byte[this.modifiers.length()];
+        Arrays.fill(this.dyeColors, (byte) -1);
+        for (int id = this.modifiers.nextSetBit(0); id >= 0; id = this.modifiers.nextSetBit(id + 1)) {
+            int tintSourceColor = this.rules.getTintSourceColor(id);
+            if (tintSourceColor >= 0) {
+                this.dyeColors[id] = (byte) tintSourceColor;
+                continue;
+            }
+            // DyeColor.getColor only looks at the item, so it is safe to work out once
+            DyeColor color = DyeColor.getColor(new ItemStack(Item.getItemById(id)));
+            if (color != null) {
+                this.dyeColors[id] = (byte) color.getId();
+            }
+        }
+    }
+
+    static TintMatcher compile(int tagGeneration, TagCollection<Item> tags, List<String> targets, List<String> modifiers) {
+        return new TintMatcher(tagGeneration, tags, targets, modifiers);
+    }
+
+    /**
+     * Adds the items matching an entry. Entries are item IDs, or tag IDs starting with '#'.
+     */
+    private static void addItems(String entry, TagCollection<Item> tags, BitSet out) {
+        if (!ItemEntries.addItems(entry, tags, out)) {
+            TutorialMod.LOGGER.warn("Unknown item or tag in tint recipe: {}", entry);
+        }
+    }
+
+    boolean isCompiledFor(int tagGeneration) {
+        return this.tagGeneration == tagGeneration && this.rules == BackpackRules.get();
+    }
+
+    boolean isTarget(int itemId) {
+        return itemId >= 0 && this.targets.get(itemId);
+    }
+
+    boolean isModifier(int itemId) {
+        return itemId >= 0 && this.modifiers.get(itemId);
+    }
+
+    /**
+     * Gets the dye color of a modifier.
+     *
+     * @param itemId The modifier's item ID
+     * @return The {@link DyeColor#getId()}, or -1 if the modifier has no dye color
+     */
+    int getDyeColor(int itemId) {
+        return itemId >= 0 && itemId < this.dyeColors.length ? this.dyeColors[itemId] : -1;
+    }
+}
@@ -0,0 +1,363 @@
+package net.silentchaos512.tutorial.crafting.recipe;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSyntaxException;
+import net.minecraft.inventory.CraftingInventory;
+import net.minecraft.item.DyeColor;
+import net.minecraft.item.IDyeableArmorItem;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.crafting.IRecipeSerializer;
+import net.minecraft.item.crafting.SpecialRecipe;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.tags.ItemTags;
+import net.minecraft.util.JSONUtils;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.world.World;
+import net.minecraftforge.common.util.Constants;
+import net.minecraftforge.registries.ForgeRegistryEntry;
+import net.silentchaos512.tutorial.TutorialMod;
+import net.silentchaos512.tutorial.crafting.DyeBlender;
+import net.silentchaos512.tutorial.item.ITintable;
+import net.silentchaos512.tutorial.metrics.Counter;
+import net.silentchaos512.tutorial.metrics.Metrics;
+import net.silentchaos512.tutorial.metrics.Timer;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A data-driven recipe for tinting items with dyes (or anything else in a tag). One target item is
+ * combined with some modifiers, and the result is the target with a new color. Example JSON:
+ * <pre>
+ * {
+ *     "type": "tutorial:tint",
+ *     "targets": ["#tutorial:backpacks", "minecraft:leather_helmet"],
+ *     "modifiers": ["#forge:dyes"],
+ *     "blend": "mix",
+ *     "min_modifiers": 1,
+ *     "max_modifiers": 8
+ * }
+ * </pre>
+ * Targets and modifiers are item IDs, or tags if they start with '#'. The blend mode is either
+ * "mix" (mix the dyes with the current color, like leather armor) or "replace" (ignore the current
+ * color). The modifier counts are optional.
+ * <p>
+ * Each recipe is compiled into a {@link TintMatcher}, so checking the grid is cheap, and the result
+ * for each crafting grid is cached until the grid changes.
+ */
+public class TintRecipe extends SpecialRecipe {
+    public static final ResourceLocation NAME = TutorialMod.getId("tint");
+    public static final Serializer SERIALIZER = new Serializer();
+
+    /** The color of untinted items. It counts as no color when mixing. */
+    public static final int NO_TINT = DyeColor.WHITE.getFireworkColor();
+
+    private static final Timer MATCH_TIMER = Metrics.timer("recipe.tint.match");
+    private static final Counter CACHE_MISSES = Metrics.counter("recipe.tint.cache_miss");
+
+    private final List<String> targets;
+    private final List<String> modifiers;
+    private final BlendMode blendMode;
+    private final int minModifiers;
+    private final int maxModifiers;
+
+    private volatile TintMatcher matcher;
+    private final Map<CraftingInventory, Match> cache = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public TintRecipe(ResourceLocation idIn, List<String> targets, List<String> modifiers, BlendMode blendMode, int minModifiers, int maxModifiers) {
+        super(idIn);
+        this.targets = ImmutableList.copyOf(targets);
+        this.modifiers = ImmutableList.copyOf(modifiers);
+        this.blendMode = blendMode;
+        this.minModifiers = minModifiers;
+        this.maxModifiers = maxModifiers;
+    }
+
+    @Override
+    public boolean matches(CraftingInventory inv, World worldIn) {
+        return getMatch(inv).matches;
+    }
+
+    @Override
+    public ItemStack getCraftingResult(CraftingInventory inv) {
+        // Normally matches was just called with the same grid, so this does not scan it again
+        Match match = getMatch(inv);
+        if (!match.matches) {
+            return ItemStack.EMPTY;
+        }
+
+        ItemStack result = inv.getStackInSlot(match.targetSlot).copy();
+        result.setCount(1);
+        if (match.recolored) {
+            setTint(result, match.color);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the compiled matcher, compiling it again if the tags have changed since last time.
+     */
+    private TintMatcher getMatcher() {
+        int generation = ItemTags.getGeneration();
+        TintMatcher current = this.matcher;
+        if (current == null || !current.isCompiledFor(generation)) {
+            current = TintMatcher.compile(generation, ItemTags.getCollection(), this.targets, this.modifiers);
+            this.matcher = current;
+        }
+        return current;
+    }
+
+    /**
+     * Gets the match for the current contents of the crafting grid. The crafting grid is checked
+     * every time it changes, for every player with a crafting table open, and vanilla calls both
+     * {@link #matches} and {@link #getCraftingResult} on each change. So we keep the last result
+     * for each crafting inventory, along with a fingerprint of the grid it was made from. The
+     * fingerprint is just the item ID, count and target color of each slot, which is much cheaper
+     * to check than tags.
+     * <p>
+     * The map is weak, so crafting inventories of closed containers can still be garbage
+     * collected. It is synchronized because the client and server threads both use it in single
+     * player.
+     *
+     * @param inv The crafting grid
+     * @return The cached or newly computed match
+     */
+    private Match getMatch(CraftingInventory inv) {
+        long start = MATCH_TIMER.start();
+        TintMatcher matcher = getMatcher();
+        Match match = this.cache.get(inv);
+        if (match == null || match.matcher != matcher || !match.isSameGrid(inv)) {
+            match = computeMatch(inv, matcher);
+            this.cache.put(inv, match);
+            CACHE_MISSES.inc();
+        }
+        MATCH_TIMER.stop(start);
+        return match;
+    }
+
+    private Match computeMatch(CraftingInventory inv, TintMatcher matcher) {
+        int size = inv.getSizeInventory();
+        int[] fingerprint = new int[size * Match.INTS_PER_SLOT];
+        int targetSlot = -1;
+        int modifierCount = 0;
+        int[] dyeCounts = new int[DyeBlender.getColorCount()];
+        boolean valid = true;
+
+        for (int i = 0; i < size; ++i) {
+            ItemStack stack = inv.getStackInSlot(i);
+            int itemId = Match.getItemId(stack);
+            boolean isTarget = matcher.isTarget(itemId);
+            fingerprint[i * Match.INTS_PER_SLOT] = itemId;
+            fingerprint[i * Match.INTS_PER_SLOT + 1] = stack.getCount();
+            fingerprint[i * Match.INTS_PER_SLOT + 2] = isTarget ? getTint(stack) : 0;
+
+            if (!valid || stack.isEmpty()) {
+                continue;
+            }
+            if (isTarget) {
+                // Exactly one target
+                valid = targetSlot < 0;
+                targetSlot = i;
+            } else if (matcher.isModifier(itemId)) {
+                ++modifierCount;
+                int dyeColor = matcher.getDyeColor(itemId);
+                if (dyeColor >= 0) {
+                    ++dyeCounts[dyeColor];
+                }
+            } else {
+                valid = false;
+            }
+        }
+
+        if (!valid || targetSlot < 0 || modifierCount < this.minModifiers || modifierCount > this.maxModifiers) {
+            return new Match(fingerprint, matcher);
+        }
+
+        int baseColor = this.blendMode == BlendMode.MIX ? fingerprint[targetSlot * Match.INTS_PER_SLOT + 2] : NO_TINT;
+        return new Match(fingerprint, matcher, targetSlot, DyeBlender.blend(baseColor, dyeCounts));
+    }
+
+    /**
+     * Gets the tint color of an item. This uses {@link ITintable} or {@link IDyeableArmorItem} if
+     * the item implements them, otherwise the {@code display.color} tag.
+     *
+     * @param stack The item
+     * @return The color, or {@link #NO_TINT}
+     */
+    public static int getTint(ItemStack stack) {
+        Item item = stack.getItem();
+        if (item instanceof ITintable) {
+            return ((ITintable) item).getTint(stack);
+        }
+        if (item instanceof IDyeableArmorItem) {
+            IDyeableArmorItem dyeable = (IDyeableArmorItem) item;
+            return dyeable.hasColor(stack) ? dyeable.getColor(stack) : NO_TINT;
+        }
+        CompoundNBT display = stack.getChildTag("display");
+        return display != null && display.contains("color", Constants.NBT.TAG_ANY_NUMERIC) ? display.getInt("color") : NO_TINT;
+    }
+
+    /**
+     * Sets the tint color of an item. See {@link #getTint(ItemStack)}.
+     *
+     * @param stack The item
+     * @param color The new color
+     */
+    public static void setTint(ItemStack stack, int color) {
+        Item item = stack.getItem();
+        if (item instanceof ITintable) {
+            ((ITintable) item).setTint(stack, color);
+        } else if (item instanceof IDyeableArmorItem) {
+            ((IDyeableArmorItem) item).setColor(stack, color);
+        } else {
+            stack.getOrCreateChildTag("display").putInt("color", color);
+        }
+    }
+
+    @Override
+    public boolean canFit(int width, int height) {
+        return width * height >= 1 + this.minModifiers;
+    }
+
+    @Override
+    public IRecipeSerializer<?> getSerializer() {
+        return SERIALIZER;
+    }
+
+    public enum BlendMode {
+        MIX, REPLACE;
+
+        public String getName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        public static BlendMode byName(String name) {
+            for (BlendMode mode : values()) {
+                if (mode.getName().equals(name)) {
+                    return mode;
+                }
+            }
+            throw new JsonSyntaxException("Unknown tint blend mode: " + name);
+        }
+    }
+
+    private static final class Match {
+        private static final int INTS_PER_SLOT = 3;
+
+        private final int[] fingerprint;
+        private final TintMatcher matcher;
+        private final boolean matches;
+        private final int targetSlot;
+        private final boolean recolored;
+        private final int color;
+
+        private Match(int[] fingerprint, TintMatcher matcher) {
+            this.fingerprint = fingerprint;
+            this.matcher = matcher;
+            this.matches = false;
+            this.targetSlot = -1;
+            this.recolored = false;
+            this.color = 0;
+        }
+
+        private Match(int[] fingerprint, TintMatcher matcher, int targetSlot, int color) {
+            this.fingerprint = fingerprint;
+            this.matcher = matcher;
+            this.matches = true;
+            this.targetSlot = targetSlot;
+            // -1 means there were no colors to mix, so the target is not changed
+            this.recolored = color >= 0;
+            this.color = color;
+        }
+
+        /**
+         * Compares the grid to the fingerprint, without allocating anything.
+         */
+        private boolean isSameGrid(CraftingInventory inv) {
+            if (inv.getSizeInventory() * INTS_PER_SLOT != this.fingerprint.length) {
+                return false;
+            }
+            for (int i = 0; i < inv.getSizeInventory(); ++i) {
+                ItemStack stack = inv.getStackInSlot(i);
+                int itemId = getItemId(stack);
+                if (this.fingerprint[i * INTS_PER_SLOT] != itemId
+                        || this.fingerprint[i * INTS_PER_SLOT + 1] != stack.getCount()
+                        || this.fingerprint[i * INTS_PER_SLOT + 2] != (this.matcher.isTarget(itemId) ? getTint(stack) : 0)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int getItemId(ItemStack stack) {
+            return stack.isEmpty() ? -1 : Item.getIdFromItem(stack.getItem());
+        }
+    }
+
+    public static class Serializer extends ForgeRegistryEntry<IRecipeSerializer<?>> implements IRecipeSerializer<TintRecipe> {
+        @Override
+        public TintRecipe read(ResourceLocation recipeId, JsonObject json) {
+            List<String> targets = readEntries(JSONUtils.getJsonArray(json, "targets"));
+            List<String> modifiers = readEntries(JSONUtils.getJsonArray(json, "modifiers"));
+            BlendMode blendMode = BlendMode.byName(JSONUtils.getString(json, "blend", BlendMode.MIX.getName()));
+            int minModifiers = JSONUtils.getInt(json, "min_modifiers", 1);
+            int maxModifiers = JSONUtils.getInt(json, "max_modifiers", Integer.MAX_VALUE);
+            if (targets.isEmpty() || modifiers.isEmpty()) {
+                throw new JsonSyntaxException("Tint recipe needs at least one target and one modifier");
+            }
+            if (minModifiers < 1 || maxModifiers < minModifiers) {
+                throw new JsonSyntaxException("Invalid tint recipe modifier counts: " + minModifiers + " to " + maxModifiers);
+            }
+            return new TintRecipe(recipeId, targets, modifiers, blendMode, minModifiers, maxModifiers);
+        }
+
+        private static List<String> readEntries(JsonArray array) {
+            ImmutableList.Builder<String> builder = ImmutableList.builder();
+            for (JsonElement element : array) {
+                builder.add(JSONUtils.getString(element, "entry"));
+            }
+            return builder.build();
+        }
+
+        @Override
+        public TintRecipe read(ResourceLocation recipeId, PacketBuffer buffer) {
+            List<String> targets = readEntries(buffer);
+            List<String> modifiers = readEntries(buffer);
+            BlendMode blendMode = buffer.readEnumValue(BlendMode.class);
+            int minModifiers = buffer.readVarInt();
+            int maxModifiers = buffer.readVarInt();
+            return new TintRecipe(recipeId, targets, modifiers, blendMode, minModifiers, maxModifiers);
+        }
+
+        private static List<String> readEntries(PacketBuffer buffer) {
+            int count = buffer.readVarInt();
+            ImmutableList.Builder<String> builder = ImmutableList.builder();
+            for (int i = 0; i < count; ++i) {
+                builder.add(buffer.readString(32767));
+            }
+            return builder.build();
+        }
+
+        @Override
+        public void write(PacketBuffer buffer, TintRecipe recipe) {
+            writeEntries(buffer, recipe.targets);
+            writeEntries(buffer, recipe.modifiers);
+            buffer.writeEnumValue(recipe.blendMode);
+            buffer.writeVarInt(recipe.minModifiers);
+            buffer.writeVarInt(recipe.maxModifiers);
+        }
+
+        private static void writeEntries(PacketBuffer buffer, List<String> entries) {
+            buffer.writeVarInt(entries.size());
+            entries.forEach(buffer::writeString);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package net.silentchaos512.tutorial.imc;
+
+import net.minecraft.item.DyeColor;
+import net.minecraft.item.Item;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.INBT;
+import net.minecraft.nbt.ListNBT;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.common.util.Constants;
+import net.minecraftforge.fml.InterModComms;
+import net.minecraftforge.fml.event.lifecycle.InterModProcessEvent;
+import net.silentchaos512.tutorial.TutorialMod;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Lets other mods add backpack rules with IMC (inter-mod communications), without depending on
+ * this mod. Messages are sent during {@code InterModEnqueueEvent}, and we read them all at once
+ * during {@code InterModProcessEvent}. Every message is collected first, then turned into one
+ * {@link BackpackRules}, so it does not matter how many messages there are or what order they
+ * arrive in.
+ * <p>
+ * Each method accepts a single value or a collection of them, so a mod can send everything in one
+ * message. Items are given as item IDs, or tag IDs starting with '#'. {@link ResourceLocation}s and
+ * {@link Item}s work too.
+ * <ul>
+ *     <li>{@value #BLACKLIST}: Items which must never be stored in a backpack.
+ *     <pre>InterModComms.sendTo("tutorial", "blacklist", () -&gt; Arrays.asList("mymod:bomb", "#mymod:unstable"));</pre></li>
+ *     <li>{@value #PICKUP_CATEGORY}: A named group of items for auto-pickup. A backpack picking up
+ *     one item in the category picks up all of them. Send a CompoundNBT with a "Name" string and
+ *     an "Items" list of strings. Categories with the same name are merged.</li>
+ *     <li>{@value #TINT_SOURCE}: Items which work like dyes in tint recipes. Send a CompoundNBT
+ *     with an "Item" string and a "Color" string, which is a dye color name like "red".</li>
+ * </ul>
+ * Bad messages are logged and skipped. They never stop the game from loading.
+ */
+public final class BackpackImc {
+    public static final String BLACKLIST = "blacklist";
+    public static final String PICKUP_CATEGORY = "pickup_category";
+    public static final String TINT_SOURCE = "tint_source";
+
+    private BackpackImc() {}
+
+    /**
+     * Reads every message sent to us and replaces the current {@link BackpackRules}.
+     *
+     * @param event The event
+     */
+    public static void process(InterModProcessEvent event) {
+        Builder builder = new Builder();
+        event.getIMCStream().forEach(builder::accept);
+
+        BackpackRules rules = builder.build();
+        BackpackRules.set(rules);
+        if (!rules.isEmpty()) {
+            TutorialMod.LOGGER.info("Backpack rules from {} IMC messages: {}", builder.messageCount, rules);
+        }
+    }
+
+    private static final class Builder {
+        private final List<String> blacklist = new ArrayList<>();
+        private final Map<String, List<String>> pickupCategories = new LinkedHashMap<>();
+        private final Map<String, DyeColor> tintSources = new LinkedHashMap<>();
+        private int messageCount;
+
+        private void accept(InterModComms.IMCMessage message) {
+            ++messageCount;
+            try {
+                Object payload = message.getMessageSupplier().get();
+                switch (message.getMethod()) {
+                    case BLACKLIST:
+                        forEach(payload, value -> this.blacklist.add(toEntry(value)));
+                        break;
+                    case PICKUP_CATEGORY:
+                        forEach(payload, this::addPickupCategory);
+                        break;
+                    case TINT_SOURCE:
+                        forEach(payload, this::addTintSource);
+                        break;
+                    default:
+                        TutorialMod.LOGGER.warn("Unknown IMC method '{}' from {}", message.getMethod(), message.getSenderModId());
+                }
+            } catch (RuntimeException ex) {
+                TutorialMod.LOGGER.error("Bad '{}' IMC message from {}: {}", message.getMethod(), message.getSenderModId(), ex.getMessage());
+            }
+        }
+
+        private void addPickupCategory(Object value) {
+            CompoundNBT tags = toCompound(value);
+            String name = tags.getString("Name");
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("pickup category has no name");
+            }
+            List<String> items = this.pickupCategories.computeIfAbsent(name, n -> new ArrayList<>());
+            ListNBT list = tags.getList("Items", Constants.NBT.TAG_STRING);
+            for (INBT item : list) {
+                items.add(toEntry(item));
+            }
+        }
+
+        private void addTintSource(Object value) {
+            CompoundNBT tags = toCompound(value);
+            String entry = toEntry(tags.getString("Item"));
+            DyeColor color = DyeColor.byTranslationKey(tags.getString("Color"), null);
+            if (color == null) {
+                throw new IllegalArgumentException("unknown dye color '" + tags.getString("Color") + "'");
+            }
+            this.tintSources.put(entry, color);
+        }
+
+        private BackpackRules build() {
+            return new BackpackRules(this.blacklist, this.pickupCategories, this.tintSources);
+        }
+
+        private static void forEach(Object payload, Consumer<Object> action) {
+            if (payload instanceof Collection) {
+                ((Collection<?>) payload).forEach(action);
+            } else if (payload instanceof ListNBT) {
+                ((ListNBT) payload).forEach(action);
+            } else {
+                action.accept(payload);
+            }
+        }
+
+        private static CompoundNBT toCompound(Object value) {
+            if (!(value instanceof CompoundNBT)) {
+                throw new IllegalArgumentException("expected CompoundNBT, got " + value);
+            }
+            return (CompoundNBT) value;
+        }
+
+        /**
+         * Converts a value to an item entry, checking that it is a valid ID. Whether the item or
+         * tag actually exists is checked later, since tags are not loaded yet.
+         */
+        private static String toEntry(Object value) {
+            if (value instanceof Item) {
+                ResourceLocation id = ((Item) value).getRegistryName();
+                if (id == null) {
+                    throw new IllegalArgumentException("item is not registered");
+                }
+                return id.toString();
+            }
+            if (value instanceof ResourceLocation) {
+                return value.toString();
+            }
+
+            String str = value instanceof INBT ? ((INBT) value).getString() : String.valueOf(value);
+            boolean isTag = str.startsWith("#");
+            ResourceLocation id = ResourceLocation.tryCreate(isTag ? str.substring(1) : str);
+            if (id == null) {
+                throw new IllegalArgumentException("invalid item or tag ID '" + str + "'");
+            }
+            return isTag ? "#" + id : id.toString();
+        }
+    }
+}
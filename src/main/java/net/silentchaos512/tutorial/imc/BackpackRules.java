@@ -0,0 +1,190 @@
+package net.silentchaos512.tutorial.imc;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import net.minecraft.item.DyeColor;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.tags.ItemTags;
+import net.minecraft.tags.TagCollection;
+import net.silentchaos512.tutorial.TutorialMod;
+import net.silentchaos512.tutorial.util.ItemEntries;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Backpack rules registered by other mods through {@link BackpackImc}. The rules are built once,
+ * after every IMC message has been read, and never change after that.
+ * <p>
+ * Rules are stored as they were sent (item IDs and tags), then compiled into tables indexed by raw
+ * item ID, so checks like "can this go in a backpack?" are a single bit set lookup. Container
+ * clicks and item pickups check these constantly, so they need to be cheap. Tags are not loaded
+ * yet when IMC is processed, and can change when data packs reload, so the tables are compiled on
+ * first use and again whenever the tag generation changes. This is the same thing {@link
+ * net.silentchaos512.tutorial.crafting.recipe.TintRecipe} does with its matcher.
+ */
+public final class BackpackRules {
+    private static volatile BackpackRules instance = new BackpackRules(ImmutableList.of(), ImmutableMap.of(), ImmutableMap.of());
+
+    private final List<String> blacklist;
+    private final Map<String, List<String>> pickupCategories;
+    private final Map<String, DyeColor> tintSources;
+
+    private volatile Tables tables;
+
+    BackpackRules(List<String> blacklist, Map<String, List<String>> pickupCategories, Map<String, DyeColor> tintSources) {
+        this.blacklist = ImmutableList.copyOf(blacklist);
+        this.pickupCategories = ImmutableMap.copyOf(pickupCategories);
+        this.tintSources = ImmutableMap.copyOf(tintSources);
+    }
+
+    /**
+     * Gets the current rules. There are no rules until IMC messages have been processed.
+     *
+     * @return The rules
+     */
+    public static BackpackRules get() {
+        return instance;
+    }
+
+    static void set(BackpackRules rules) {
+        instance = rules;
+    }
+
+    /**
+     * Checks if an item is not allowed in backpacks.
+     *
+     * @param stack The item
+     * @return True if the item must never be stored in a backpack
+     */
+    public boolean isBlacklisted(ItemStack stack) {
+        return !stack.isEmpty() && isBlacklisted(Item.getIdFromItem(stack.getItem()));
+    }
+
+    public boolean isBlacklisted(int itemId) {
+        return getTables().blacklist.get(itemId);
+    }
+
+    /**
+     * Adds pickup categories to an auto-pickup filter. If the filter has any item from a category,
+     * every item in the category is added. So a backpack set to pick up one ore picks up every ore
+     * in the same category.
+     *
+     * @param filter The filter, as raw item IDs
+     */
+    public void expandPickupFilter(IntSet filter) {
+        Tables tables = getTables();
+        for (BitSet category : tables.pickupCategories) {
+            if (containsAny(category, filter)) {
+                for (int id = category.nextSetBit(0); id >= 0; id = category.nextSetBit(id + 1)) {
+                    filter.add(id);
+                }
+            }
+        }
+    }
+
+    private static boolean containsAny(BitSet category, IntSet filter) {
+        for (int id : filter) {
+            if (category.get(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the items registered as tint sources. These work like dyes in tint recipes.
+     *
+     * @return A new bit set of raw item IDs
+     */
+    public BitSet getTintSources() {
+        return (BitSet) getTables().tintSources.clone();
+    }
+
+    /**
+     * Gets the dye color of a tint source.
+     *
+     * @param itemId The raw item ID
+     * @return The {@link DyeColor} ID, or -1 if the item is not a tint source
+     */
+    public int getTintSourceColor(int itemId) {
+        byte[] colors = getTables().tintColors;
+        return itemId < colors.length ? colors[itemId] : -1;
+    }
+
+    public boolean isEmpty() {
+        return blacklist.isEmpty() && pickupCategories.isEmpty() && tintSources.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "BackpackRules{blacklist=" + blacklist.size()
+                + ", pickupCategories=" + pickupCategories.keySet()
+                + ", tintSources=" + tintSources.size() + "}";
+    }
+
+    private Tables getTables() {
+        // Compare generations, not collections. /reload refills the same collection.
+        int generation = ItemTags.getGeneration();
+        Tables current = this.tables;
+        if (current == null || current.tagGeneration != generation) {
+            current = new Tables(this, generation, ItemTags.getCollection());
+            this.tables = current;
+        }
+        return current;
+    }
+
+    /**
+     * The compiled rules, for one tag generation. Never modified after construction.
+     */
+    private static final class Tables {
+        private final int tagGeneration;
+        private final BitSet blacklist = new BitSet();
+        private final BitSet[] pickupCategories;
+        private final BitSet tintSources = new BitSet();
+        /** The dye color of each tint source, by item ID, or -1 if the item is not one */
+        private final byte[] tintColors;
+
+        private Tables(BackpackRules rules, int tagGeneration, TagCollection<Item> tags) {
+            this.tagGeneration = tagGeneration;
+            rules.blacklist.forEach(entry -> addItems(entry, tags, this.blacklist, "backpack blacklist"));
+
+            this.pickupCategories = new BitSet[rules.pickupCategories.size()];
+            int index = 0;
+            for (Map.Entry<String, List<String>> category : rules.pickupCategories.entrySet()) {
+                BitSet items = new BitSet();
+                category.getValue().forEach(entry -> addItems(entry, tags, items, "pickup category " + category.getKey()));
+                // Blacklisted items could never be picked up anyway
+                items.andNot(this.blacklist);
+                this.pickupCategories[index++] = items;
+            }
+
+            // Later entries win, so a mod can override a tag's color for one item
+            byte[] colors = new byte[0];
+            for (Map.Entry<String, DyeColor> source : rules.tintSources.entrySet()) {
+                BitSet items = new BitSet();
+                addItems(source.getKey(), tags, items, "tint sources");
+                if (items.length() > colors.length) {
+                    int oldLength = colors.length;
+                    colors = Arrays.copyOf(colors, items.length());
+                    Arrays.fill(colors, oldLength, colors.length, (byte) -1);
+                }
+                for (int id = items.nextSetBit(0); id >= 0; id = items.nextSetBit(id + 1)) {
+                    colors[id] = (byte) source.getValue().getId();
+                }
+                this.tintSources.or(items);
+            }
+            this.tintColors = colors;
+        }
+
+        private static void addItems(String entry, TagCollection<Item> tags, BitSet out, String context) {
+            if (!ItemEntries.addItems(entry, tags, out)) {
+                TutorialMod.LOGGER.warn("Unknown item or tag in {}: {}", context, entry);
+            }
+        }
+    }
+}
@@ -1,30 +1,63 @@
 package net.silentchaos512.tutorial.init;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 import net.minecraft.block.Block;
 import net.minecraft.block.SoundType;
 import net.minecraft.block.material.Material;
 import net.minecraft.item.Item;
+import net.minecraft.util.JSONUtils;
 import net.minecraft.util.LazyLoadBase;
+import net.minecraftforge.fml.ModList;
+import net.minecraftforge.fml.loading.FMLPaths;
 import net.silentchaos512.tutorial.TutorialMod;
 import net.silentchaos512.tutorial.block.OreBlock;
+import net.silentchaos512.tutorial.metrics.StartupProfiler;
+import net.silentchaos512.tutorial.world.GemOreSettings;
 
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
 
 /**
- * Example of an enum being used to represent sets of similar blocks and items. This is especially
- * useful when you have a large number of variants (like in Silent's Gems:
+ * Represents sets of similar blocks and items. This is especially useful when you have a large
+ * number of variants (like in Silent's Gems:
  * https://github.com/SilentChaos512/SilentGems/blob/1.13/src/main/java/net/silentchaos512/gems/lib/Gems.java),
  * or when you have multiple types of blocks and items corresponding to the variants. Gems are a
- * good example. If you were making a mod with lots of metal ores, this would also be useful. I also
- * use enums for what I call "crafting items", items which exist almost exclusively for use in
- * recipes.
+ * good example. If you were making a mod with lots of metal ores, this would also be useful.
  * <p>
- * If you need to add a new variant, simply add a new enum constant to the list. Everything else
- * will be created for you.
+ * This used to be an enum, but then every new gem needed a code change, plus about 20 JSON files.
+ * Now the gems are read from a file (config/tutorial-gems.json) when the mod is constructed, which
+ * is before registry events. Each gem only needs a name there, and textures in a resource pack.
+ * Blockstates, models, loot tables, recipes and tags are all made from templates by {@link
+ * net.silentchaos512.tutorial.resources.GemResourcePack}. An optional "ore" object controls world
+ * generation (see {@link GemOreSettings}).
+ * <p>
+ * Registries must match between the client and server, so both need the same gems file!
  */
-public enum Gem {
-    RUBY,
-    SAPPHIRE;
+public final class Gem {
+    private static final String DEFINITIONS_FILE = "tutorial-gems.json";
+    private static final String DEFAULT_DEFINITIONS = "gems/definitions.json";
+    private static final Pattern VALID_NAME = Pattern.compile("[a-z0-9_]+");
+
+    private static List<Gem> values = Collections.emptyList();
+    private static Map<String, Gem> byName = Collections.emptyMap();
+
+    private final String name;
+    private final String displayName;
+    @Nullable private final GemOreSettings oreSettings;
 
     // Block and item references. I use LazyLoadBase so the actual blocks and items are not created
     // until they are needed. While not strictly necessary, this will control when classes are
@@ -33,22 +66,123 @@ public enum Gem {
     private final LazyLoadBase<Block> storageBlock;
     private final LazyLoadBase<Item> gemItem;
 
-    Gem() {
-        // Note that this::getGemItem is a method reference. The gem item should not be created
-        // until later. Conveniently, the method signature matches IItemProvider.
-        oreBlock = new LazyLoadBase<>(OreBlock::new);
-        storageBlock = new LazyLoadBase<>(() -> new Block(Block.Properties.create(Material.IRON).hardnessAndResistance(5, 6).sound(SoundType.METAL)));
-        gemItem = new LazyLoadBase<>(() -> new Item(new Item.Properties().group(TutorialMod.ITEM_GROUP)));
+    private Gem(String name, String displayName, @Nullable GemOreSettings oreSettings) {
+        this.name = name;
+        this.displayName = displayName;
+        this.oreSettings = oreSettings;
+        // The suppliers are counted, so the startup report shows how many were loaded and how long it took
+        oreBlock = new LazyLoadBase<>(StartupProfiler.counted("Gem ore blocks", OreBlock::new));
+        storageBlock = new LazyLoadBase<>(StartupProfiler.counted("Gem storage blocks", () -> new Block(Block.Properties.create(Material.IRON).hardnessAndResistance(5, 6).sound(SoundType.METAL))));
+        gemItem = new LazyLoadBase<>(StartupProfiler.counted("Gem items", () -> new Item(new Item.Properties().group(TutorialMod.ITEM_GROUP))));
+    }
+
+    /**
+     * Gets all gems, in the order they are defined.
+     *
+     * @return An unmodifiable list of gems
+     */
+    public static List<Gem> values() {
+        return values;
+    }
+
+    @Nullable
+    public static Gem byName(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * Reads the gems file, creating it with the default gems (ruby and sapphire) if it does not
+     * exist. Call this from the mod constructor. If the file is broken, we log an error and use the
+     * defaults, rather than crash.
+     */
+    public static void loadDefinitions() {
+        Path file = FMLPaths.CONFIGDIR.get().resolve(DEFINITIONS_FILE);
+        Path defaults = ModList.get().getModFileById(TutorialMod.MOD_ID).getFile().findResource(DEFAULT_DEFINITIONS);
+
+        Map<String, Gem> map;
+        try {
+            if (!Files.exists(file)) {
+                Files.copy(defaults, file);
+            }
+            map = readDefinitions(file);
+        } catch (IOException | JsonParseException ex) {
+            TutorialMod.LOGGER.error("Could not read {}, using the default gems", file, ex);
+            try {
+                map = readDefinitions(defaults);
+            } catch (IOException ex1) {
+                throw new IllegalStateException("Could not read the default gems", ex1);
+            }
+        }
+
+        values = Collections.unmodifiableList(new ArrayList<>(map.values()));
+        byName = map;
+        TutorialMod.LOGGER.info("Loaded {} gems", values.size());
+    }
+
+    private static Map<String, Gem> readDefinitions(Path file) throws IOException {
+        JsonObject json;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            json = new JsonParser().parse(reader).getAsJsonObject();
+        }
+
+        // LinkedHashMap keeps the gems in the order they are listed, which is the order they are registered
+        Map<String, Gem> map = new LinkedHashMap<>();
+        for (JsonElement element : JSONUtils.getJsonArray(json, "gems")) {
+            JsonObject obj = JSONUtils.getJsonObject(element, "gem");
+            String name = JSONUtils.getString(obj, "name");
+            if (!VALID_NAME.matcher(name).matches()) {
+                TutorialMod.LOGGER.error("Invalid gem name '{}' in {}, only a-z, 0-9 and _ are allowed", name, file);
+            } else if (map.containsKey(name)) {
+                TutorialMod.LOGGER.error("Duplicate gem '{}' in {}", name, file);
+            } else {
+                String displayName = JSONUtils.getString(obj, "displayName", getDefaultDisplayName(name));
+                GemOreSettings oreSettings = obj.has("ore") ? GemOreSettings.deserialize(JSONUtils.getJsonObject(obj, "ore")) : null;
+                map.put(name, new Gem(name, displayName, oreSettings));
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Turns a name like "blue_topaz" into "Blue Topaz"
+     */
+    private static String getDefaultDisplayName(String name) {
+        StringBuilder builder = new StringBuilder(name.length());
+        for (String word : name.split("_")) {
+            if (!word.isEmpty()) {
+                if (builder.length() > 0) builder.append(' ');
+                builder.append(word.substring(0, 1).toUpperCase(Locale.ROOT)).append(word.substring(1));
+            }
+        }
+        return builder.toString();
     }
 
     /**
      * Gets a {@link net.minecraft.util.ResourceLocation}-friendly name for the gem.
      *
-     * @return Enum constant name lowercased
+     * @return The gem's name, like "ruby"
      */
     public String getName() {
-        // Locale.ROOT will ensure consistent behavior (prevent crashes) on all locales
-        return name().toLowerCase(Locale.ROOT);
+        return name;
+    }
+
+    /**
+     * Gets the English name of the gem, used to generate translations.
+     *
+     * @return The display name, like "Ruby"
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Gets how the gem's ore generates in the world. See {@link GemOreSettings} for the format.
+     *
+     * @return The ore settings, or null if the ore does not generate
+     */
+    @Nullable
+    public GemOreSettings getOreSettings() {
+        return oreSettings;
     }
 
     /**
@@ -77,4 +211,9 @@ public enum Gem {
     public Item getGemItem() {
         return gemItem.getValue();
     }
+
+    @Override
+    public String toString() {
+        return "Gem{" + name + "}";
+    }
 }
@@ -60,7 +60,7 @@ public final class ModBlocks {
         blueStoneSlab = register("blue_stone_slab", new SlabBlock(Block.Properties.from(blueStone)));
         blueStoneStairs = register("blue_stone_stairs", new TutorialStairsBlock(blueStone.getDefaultState(), Block.Properties.from(blueStone)));
 
-        // When registering enum items, we iterate over all enum values and register blocks in the
+        // When registering gem blocks, we iterate over all gems and register blocks in the
         // loop. Use getName() when creating the block's name, and the appropriate block getter.
         // Note I use two loops here. This affects the order the blocks are registered and
         // displayed. You could use one loop, but I prefer to group by block type. A single loop
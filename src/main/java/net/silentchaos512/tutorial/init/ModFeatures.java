@@ -0,0 +1,59 @@
+package net.silentchaos512.tutorial.init;
+
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.gen.GenerationStage;
+import net.minecraft.world.gen.feature.Feature;
+import net.minecraft.world.gen.placement.CountRangeConfig;
+import net.minecraft.world.gen.placement.Placement;
+import net.minecraftforge.event.RegistryEvent;
+import net.minecraftforge.registries.ForgeRegistries;
+import net.silentchaos512.tutorial.TutorialMod;
+import net.silentchaos512.tutorial.world.GemOreFeature;
+import net.silentchaos512.tutorial.world.GemOreFeatureConfig;
+import net.silentchaos512.tutorial.world.GemOreSettings;
+
+/**
+ * Registers world generation features, and adds them to biomes. Features are registered like
+ * blocks and items, but adding them to biomes is a separate step. In 1.14, each biome has a list
+ * of features for each generation stage, which we can add to during setup.
+ */
+public final class ModFeatures {
+    public static final GemOreFeature GEM_ORE = new GemOreFeature(GemOreFeatureConfig::deserialize);
+
+    private ModFeatures() {}
+
+    public static void registerFeatures(RegistryEvent.Register<Feature<?>> event) {
+        GEM_ORE.setRegistryName(TutorialMod.getId("gem_ore"));
+        ForgeRegistries.FEATURES.register(GEM_ORE);
+    }
+
+    /**
+     * Adds a gem ore feature to each biome the gem allows, for every gem with ore settings. Biome
+     * feature lists are not thread-safe, so call this with {@link
+     * net.minecraftforge.fml.DeferredWorkQueue#runLater(Runnable)}, not directly in a setup event.
+     */
+    public static void addToBiomes() {
+        int added = 0;
+        for (Gem gem : Gem.values()) {
+            GemOreSettings settings = gem.getOreSettings();
+            if (settings == null || settings.getCount() == 0) {
+                continue;
+            }
+
+            for (Biome biome : ForgeRegistries.BIOMES) {
+                if (settings.isBiomeAllowed(biome)) {
+                    // COUNT_RANGE picks a height from bottomOffset to maximum - topOffset, so
+                    // passing minHeight for both gives minHeight to maxHeight
+                    biome.addFeature(GenerationStage.Decoration.UNDERGROUND_ORES, Biome.createDecoratedFeature(
+                            GEM_ORE,
+                            new GemOreFeatureConfig(gem.getOreBlock().getDefaultState(), settings.getVeinSize()),
+                            Placement.COUNT_RANGE,
+                            new CountRangeConfig(settings.getCount(), settings.getMinHeight(), settings.getMinHeight(), settings.getMaxHeight())
+                    ));
+                    ++added;
+                }
+            }
+        }
+        TutorialMod.LOGGER.debug("Added {} gem ore features to biomes", added);
+    }
+}
@@ -17,7 +17,9 @@ import java.util.Map;
  * ModBlocks}, so I won't repeat myself here. Check ModBlocks' Javadoc for more details.
  */
 public final class ModItems {
-    public static final BackpackItem backpack = new BackpackItem();
+    public static final BackpackItem backpack = new BackpackItem(27);
+    public static final BackpackItem largeBackpack = new BackpackItem(270);
+    public static final BackpackItem hugeBackpack = new BackpackItem(2700);
 
     /**
      * Stores block items which need to be registered. I am using a {@link LinkedHashMap} so the
@@ -42,6 +44,8 @@ public final class ModItems {
 
         // Items
         register("backpack", backpack);
+        register("large_backpack", largeBackpack);
+        register("huge_backpack", hugeBackpack);
 
         // See the comment in ModBlocks, this is the same concept
         for (Gem gem : Gem.values()) {
@@ -2,9 +2,11 @@ package net.silentchaos512.tutorial.init;
 
 import net.minecraft.item.crafting.IRecipeSerializer;
 import net.silentchaos512.tutorial.crafting.recipe.RecolorBackpackRecipe;
+import net.silentchaos512.tutorial.crafting.recipe.TintRecipe;
 
 public class ModRecipes {
     public static void init() {
         IRecipeSerializer.register(RecolorBackpackRecipe.NAME.toString(), RecolorBackpackRecipe.SERIALIZER);
+        IRecipeSerializer.register(TintRecipe.NAME.toString(), TintRecipe.SERIALIZER);
     }
 }
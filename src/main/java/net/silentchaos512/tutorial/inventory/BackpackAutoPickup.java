@@ -0,0 +1,170 @@
+package net.silentchaos512.tutorial.inventory;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import net.minecraft.entity.item.ItemEntity;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.stats.Stats;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.player.EntityItemPickupEvent;
+import net.minecraftforge.fml.common.ObfuscationReflectionHelper;
+import net.minecraftforge.registries.ForgeRegistries;
+import net.silentchaos512.tutorial.imc.BackpackRules;
+import net.silentchaos512.tutorial.item.BackpackItem;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Puts picked up items into backpacks in the player's inventory. Each backpack has its own filter
+ * (see {@link BackpackItem#getAutoPickupFilter(ItemStack)}), so this is opt-in per backpack.
+ * <p>
+ * Mining a field of ore can mean dozens of pickups per tick, so the work is batched. The first
+ * pickup in a tick finds the player's backpacks and resolves their inventories and filters once.
+ * Later pickups in the same tick reuse that. Items are inserted through each backpack's {@link
+ * BackpackMergeIndex}, and each backpack which received items is saved once, at the end of the
+ * tick.
+ * <p>
+ * Filters are expanded with pickup categories from other mods (see {@link
+ * net.silentchaos512.tutorial.imc.BackpackImc}) when they are resolved.
+ * <p>
+ * Vanilla holds on to the item entity's stack (and its count) while the event is fired, and puts
+ * whatever is left of that same stack into the player's inventory afterwards. So backpacks get a
+ * copy, and the entity's stack is shrunk in place rather than replaced. Vanilla also counts the
+ * whole stack for the pickup animation and stats, so we only do that ourselves when we take
+ * everything and cancel the event.
+ */
+public final class BackpackAutoPickup {
+    private static final Map<PlayerEntity, List<Target>> TARGETS = new IdentityHashMap<>();
+    private static final Set<Target> CHANGED = new LinkedHashSet<>();
+    // ItemEntity.age, which has no server-side getter
+    private static final Field AGE = ObfuscationReflectionHelper.findField(ItemEntity.class, "field_70292_b");
+
+    private BackpackAutoPickup() {}
+
+    public static void onItemPickup(EntityItemPickupEvent event) {
+        PlayerEntity player = event.getPlayer();
+        ItemEntity entity = event.getItem();
+        ItemStack stack = entity.getItem();
+        if (player.world.isRemote || stack.isEmpty() || entity.cannotPickup() || !canPickUp(entity, player)) {
+            return;
+        }
+
+        List<Target> targets = TARGETS.computeIfAbsent(player, BackpackAutoPickup::findTargets);
+        if (targets.isEmpty()) {
+            return;
+        }
+
+        Item item = stack.getItem();
+        int itemId = Item.getIdFromItem(item);
+        int startCount = stack.getCount();
+        ItemStack remainder = stack.copy();
+        for (Target target : targets) {
+            if (target.filter.contains(itemId)) {
+                ItemStack newRemainder = target.handler.getMergeIndex().insert(remainder);
+                if (newRemainder.getCount() != remainder.getCount()) {
+                    CHANGED.add(target);
+                }
+                remainder = newRemainder;
+                if (remainder.isEmpty()) break;
+            }
+        }
+
+        int pickedUp = startCount - remainder.getCount();
+        if (pickedUp <= 0) {
+            return;
+        }
+
+        // Vanilla tries to put the rest in the player's inventory
+        stack.shrink(pickedUp);
+        if (stack.isEmpty()) {
+            // Everything went into backpacks, so vanilla has nothing left to do
+            player.onItemPickup(entity, pickedUp);
+            player.addStat(Stats.ITEM_PICKED_UP.get(item), pickedUp);
+            entity.remove();
+            event.setCanceled(true);
+        }
+    }
+
+    /**
+     * Vanilla's check for whether the player may have an item someone else threw: only the owner
+     * may, until the last 10 seconds before it despawns.
+     */
+    private static boolean canPickUp(ItemEntity entity, PlayerEntity player) {
+        UUID owner = entity.getOwnerId();
+        if (owner == null || owner.equals(player.getUniqueID())) {
+            return true;
+        }
+        try {
+            return entity.lifespan - AGE.getInt(entity) <= 200;
+        } catch (IllegalAccessException ex) {
+            return false;
+        }
+    }
+
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END) return;
+
+        // One save per backpack, no matter how many items it picked up this tick
+        for (Target target : CHANGED) {
+            target.backpackItem.saveInventory(target.backpack, target.handler);
+        }
+        CHANGED.clear();
+        TARGETS.clear();
+    }
+
+    private static List<Target> findTargets(PlayerEntity player) {
+        PlayerInventory inventory = player.inventory;
+        List<Target> targets = new ArrayList<>();
+        addTargets(inventory.mainInventory, targets);
+        addTargets(inventory.offHandInventory, targets);
+        return targets.isEmpty() ? Collections.emptyList() : targets;
+    }
+
+    private static void addTargets(List<ItemStack> stacks, List<Target> targets) {
+        for (ItemStack stack : stacks) {
+            if (stack.getItem() instanceof BackpackItem && BackpackItem.hasAutoPickup(stack)) {
+                IntSet filter = new IntOpenHashSet();
+                for (ResourceLocation id : BackpackItem.getAutoPickupFilter(stack)) {
+                    Item item = ForgeRegistries.ITEMS.getValue(id);
+                    if (item != null) {
+                        filter.add(Item.getIdFromItem(item));
+                    }
+                }
+                BackpackRules.get().expandPickupFilter(filter);
+                if (!filter.isEmpty()) {
+                    BackpackItem backpackItem = (BackpackItem) stack.getItem();
+                    // The inventory comes from BackpackStorage, so this does not decode anything
+                    // unless the backpack was evicted
+                    BackpackItemHandler handler = (BackpackItemHandler) backpackItem.getInventory(stack);
+                    targets.add(new Target(stack, backpackItem, handler, filter));
+                }
+            }
+        }
+    }
+
+    private static final class Target {
+        private final ItemStack backpack;
+        private final BackpackItem backpackItem;
+        private final BackpackItemHandler handler;
+        private final IntSet filter;
+
+        private Target(ItemStack backpack, BackpackItem backpackItem, BackpackItemHandler handler, IntSet filter) {
+            this.backpack = backpack;
+            this.backpackItem = backpackItem;
+            this.handler = handler;
+            this.filter = filter;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package net.silentchaos512.tutorial.inventory;
+
+import net.minecraft.item.ItemStack;
+import net.minecraft.util.Direction;
+import net.minecraftforge.common.capabilities.Capability;
+import net.minecraftforge.common.capabilities.ICapabilityProvider;
+import net.minecraftforge.common.util.LazyOptional;
+import net.minecraftforge.items.CapabilityItemHandler;
+import net.minecraftforge.items.IItemHandler;
+import net.silentchaos512.tutorial.item.BackpackItem;
+
+import javax.annotation.Nullable;
+
+/**
+ * Attaches a backpack's inventory to the backpack stack. This is created by {@link
+ * BackpackItem#initCapabilities(ItemStack, net.minecraft.nbt.CompoundNBT)}, so every backpack stack
+ * gets its own provider.
+ * <p>
+ * The inventory is looked up lazily, the first time something asks for it. Most backpack stacks
+ * are never opened (think of all the copies made when syncing inventories), so there is no reason
+ * to load their contents up front. On the server, the inventory comes from {@link
+ * BackpackStorage}. If the storage evicts it, the next request looks it up again.
+ */
+public class BackpackCapabilityProvider implements ICapabilityProvider {
+    private final ItemStack backpack;
+    @Nullable private BackpackItemHandler handler;
+    private LazyOptional<IItemHandler> optional = LazyOptional.empty();
+
+    public BackpackCapabilityProvider(ItemStack backpack) {
+        this.backpack = backpack;
+    }
+
+    @Override
+    public <T> LazyOptional<T> getCapability(Capability<T> cap, @Nullable Direction side) {
+        if (cap != CapabilityItemHandler.ITEM_HANDLER_CAPABILITY) {
+            return LazyOptional.empty();
+        }
+        if (this.handler == null || this.handler.isEvicted()) {
+            if (this.handler != null) {
+                this.optional.invalidate();
+            }
+            this.handler = resolve();
+            BackpackItemHandler resolved = this.handler;
+            this.optional = LazyOptional.of(() -> resolved);
+        }
+        return CapabilityItemHandler.ITEM_HANDLER_CAPABILITY.orEmpty(cap, this.optional);
+    }
+
+    private BackpackItemHandler resolve() {
+        int size = ((BackpackItem) this.backpack.getItem()).getInventorySize(this.backpack);
+        BackpackStorage storage = BackpackStorage.get();
+        if (storage != null) {
+            return storage.getInventory(this.backpack, size);
+        }
+        // Client side, contents are synced by the container
+        return BackpackItemHandler.load(this.backpack, size);
+    }
+}
@@ -0,0 +1,67 @@
+package net.silentchaos512.tutorial.inventory;
+
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.server.MinecraftServer;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.fml.server.ServerLifecycleHooks;
+import net.silentchaos512.tutorial.Config;
+
+import java.util.List;
+
+/**
+ * Periodically saves the changes in open backpacks. Every {@code checkpointInterval} ticks, we go
+ * through the players with a backpack open and save their changed slots. Once {@code
+ * checkpointBudget} slots have been written in a tick, the checkpoint continues on the next tick,
+ * starting with the player who was next in line. A backpack is always saved all at once, so the
+ * budget can be exceeded by one backpack.
+ */
+public final class BackpackCheckpoints {
+    private static int ticks;
+    private static boolean pending;
+    private static int nextPlayer;
+
+    private BackpackCheckpoints() {}
+
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END) return;
+
+        int interval = Config.COMMON.backpackCheckpointInterval.get();
+        if (interval <= 0) return;
+
+        if (++ticks >= interval) {
+            ticks = 0;
+            pending = true;
+        }
+        if (pending) {
+            pending = !runCheckpoint(Config.COMMON.backpackCheckpointBudget.get());
+        }
+    }
+
+    /**
+     * Saves open backpacks until everything is saved or the budget is spent.
+     *
+     * @param budget The maximum number of slots to write
+     * @return True if everything was saved, false if the budget ran out
+     */
+    private static boolean runCheckpoint(int budget) {
+        MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        if (server == null) return true;
+
+        List<ServerPlayerEntity> players = server.getPlayerList().getPlayers();
+        int count = players.size();
+        for (int i = 0; i < count; ++i) {
+            int index = (nextPlayer + i) % count;
+            ServerPlayerEntity player = players.get(index);
+            if (player.openContainer instanceof BackpackContainer) {
+                BackpackContainer container = (BackpackContainer) player.openContainer;
+                budget -= container.checkpoint();
+                if (budget <= 0) {
+                    nextPlayer = (index + 1) % count;
+                    return false;
+                }
+            }
+        }
+        nextPlayer = 0;
+        return true;
+    }
+}
@@ -2,33 +2,87 @@ package net.silentchaos512.tutorial.inventory;
 
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.entity.player.ServerPlayerEntity;
 import net.minecraft.inventory.container.ClickType;
 import net.minecraft.inventory.container.Container;
+import net.minecraft.inventory.container.IContainerListener;
 import net.minecraft.inventory.container.Slot;
 import net.minecraft.item.ItemStack;
-import net.minecraftforge.items.IItemHandler;
-import net.minecraftforge.items.SlotItemHandler;
+import net.minecraft.util.IntReferenceHolder;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.math.MathHelper;
+import net.silentchaos512.tutorial.Config;
 import net.silentchaos512.tutorial.init.ModContainerTypes;
 import net.silentchaos512.tutorial.item.BackpackItem;
+import net.silentchaos512.tutorial.metrics.Counter;
+import net.silentchaos512.tutorial.metrics.Metrics;
+import net.silentchaos512.tutorial.metrics.Timer;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The backpack container. Large backpacks can have thousands of slots, so the container does not
+ * create a slot for each one. Instead, there is a window of up to {@link #WINDOW_ROWS} rows, which
+ * the player scrolls through. Only the window is synced to the client, along with a small summary
+ * (the scroll position and the number of used slots), so the cost stays about the same no matter
+ * how big the backpack is.
+ * <p>
+ * On the server, the window slots point into the real backpack inventory at the current scroll
+ * offset. On the client, they point into a small inventory the size of the window, which the normal
+ * container sync keeps up to date.
+ */
 public class BackpackContainer extends Container {
+    public static final int WINDOW_ROWS = 6;
+
+    private static final Counter OPENED = Metrics.counter("backpack.opened");
+    private static final Timer CLOSE_TIMER = Metrics.timer("backpack.close");
+
     private final ItemStack item;
-    private final IItemHandler itemHandler;
+    private final BackpackItemHandler itemHandler;
+    private final boolean isClient;
+    private final int inventorySize;
+    private final int windowSize;
+    private final IntReferenceHolder scrollRow = IntReferenceHolder.single();
+    private final IntReferenceHolder usedSlots = IntReferenceHolder.single();
+    private final IntReferenceHolder autoPickup = IntReferenceHolder.single();
+    private final List<BatchedSlotListener> batchedListeners = new ArrayList<>();
     private int blocked = -1;
 
     public BackpackContainer(int id, PlayerInventory playerInventory) {
         super(ModContainerTypes.backpack, id);
         this.item = getHeldItem(playerInventory.player);
-        this.itemHandler = ((BackpackItem) this.item.getItem()).getInventory(this.item);
+        this.isClient = playerInventory.player.world.isRemote;
+
+        BackpackItem backpackItem = (BackpackItem) this.item.getItem();
+        this.inventorySize = backpackItem.getInventorySize(this.item);
+        this.windowSize = Math.min(this.inventorySize, WINDOW_ROWS * 9);
+
+        if (this.isClient) {
+            // The client only ever sees the window
+            this.itemHandler = new BackpackItemHandler(this.windowSize);
+        } else {
+            // getInventory always returns the BackpackItemHandler attached to the stack
+            this.itemHandler = (BackpackItemHandler) backpackItem.getInventory(this.item);
+            OPENED.inc();
+        }
+        // Keep the inventory loaded while the container is open
+        this.itemHandler.startUsing();
+
+        trackInt(this.scrollRow);
+        trackInt(this.usedSlots);
+        trackInt(this.autoPickup);
 
-        // Add backpack slots (3 rows of 9)
-        for (int i = 0; i < this.itemHandler.getSlots(); ++i) {
+        // Add backpack window slots (up to 6 rows of 9)
+        for (int i = 0; i < this.windowSize; ++i) {
             int x = 8 + 18 * (i % 9);
             int y = 18 + 18 * (i / 9);
-            addSlot(new SlotItemHandler(this.itemHandler, i, x, y));
+            addSlot(new BackpackSlot(this.itemHandler, i, this::getWindowOffset, x, y));
         }
 
-        final int rowCount = this.itemHandler.getSlots() / 9;
+        final int rowCount = getInventoryRows();
         final int yOffset = (rowCount - 4) * 18;
 
         // Player inventory
@@ -65,12 +119,101 @@ public class BackpackContainer extends Container {
     }
 
     /**
-     * Gets the number of backpack inventory rows. This assumes 9 slots per row.
+     * Gets the number of visible backpack inventory rows. This assumes 9 slots per row.
      *
-     * @return The number of rows of backpack slots
+     * @return The number of rows of backpack slots in the window
      */
     public int getInventoryRows() {
-        return this.itemHandler.getSlots() / 9;
+        return this.windowSize / 9;
+    }
+
+    /**
+     * Gets the total number of rows in the backpack, including those outside the window.
+     *
+     * @return The number of rows in the backpack
+     */
+    public int getTotalRows() {
+        return this.inventorySize / 9;
+    }
+
+    public int getInventorySize() {
+        return this.inventorySize;
+    }
+
+    public int getUsedSlots() {
+        return this.usedSlots.get();
+    }
+
+    public int getScrollRow() {
+        return this.scrollRow.get();
+    }
+
+    /**
+     * Scrolls the window to the given row. The row is clamped so the window stays inside the
+     * backpack. On the client, this only changes what the screen shows until the server agrees.
+     *
+     * @param row The first visible row
+     */
+    public void setScrollRow(int row) {
+        int maxRow = Math.max(0, getTotalRows() - getInventoryRows());
+        this.scrollRow.set(MathHelper.clamp(row, 0, maxRow));
+    }
+
+    /**
+     * Sorts and compacts the whole backpack, using the order set in the config. Server only.
+     */
+    public void sort() {
+        if (!this.isClient) {
+            BackpackSorter.sort(this.itemHandler, Config.COMMON.backpackSortOrder.get());
+        }
+    }
+
+    public boolean hasAutoPickup() {
+        return this.autoPickup.get() != 0;
+    }
+
+    /**
+     * Turns auto-pickup on or off. When turned on, the backpack picks up the items it currently
+     * contains, so players set the filter by putting one of each item they want in the backpack.
+     * Server only.
+     */
+    public void toggleAutoPickup() {
+        if (this.isClient || this.item.isEmpty()) {
+            return;
+        }
+        if (BackpackItem.hasAutoPickup(this.item)) {
+            BackpackItem.setAutoPickupFilter(this.item, null);
+        } else {
+            Set<ResourceLocation> ids = new LinkedHashSet<>();
+            for (int i = 0; i < this.itemHandler.getSlots(); ++i) {
+                ItemStack stack = this.itemHandler.getStackInSlot(i);
+                if (!stack.isEmpty()) {
+                    ids.add(stack.getItem().getRegistryName());
+                }
+            }
+            BackpackItem.setAutoPickupFilter(this.item, ids);
+        }
+    }
+
+    private int getWindowOffset() {
+        // The client's inventory is only the size of the window, so there is no offset
+        return this.isClient ? 0 : this.scrollRow.get() * 9;
+    }
+
+    /**
+     * Saves the changed slots without closing the container. Called periodically by {@link
+     * BackpackCheckpoints}, so a crash or kick does not lose everything since the backpack was
+     * opened.
+     *
+     * @return The number of changed slots which were written
+     */
+    public int checkpoint() {
+        if (this.item.isEmpty()) {
+            return 0;
+        }
+        int changed = this.itemHandler.getDirtyCount();
+        ((BackpackItem) this.item.getItem()).saveInventory(this.item, this.itemHandler);
+        return changed;
     }
 
     @Override
@@ -78,11 +221,44 @@ public class BackpackContainer extends Container {
         return true;
     }
 
+    /**
+     * Players are wrapped in a {@link BatchedSlotListener}, so all slot changes found by {@link
+     * #detectAndSendChanges()} are sent in one packet, instead of one packet per slot.
+     *
+     * @param listener The listener, usually the player who opened the container
+     */
+    @Override
+    public void addListener(IContainerListener listener) {
+        if (listener instanceof ServerPlayerEntity) {
+            BatchedSlotListener batched = new BatchedSlotListener((ServerPlayerEntity) listener);
+            if (!this.batchedListeners.contains(batched)) {
+                this.batchedListeners.add(batched);
+            }
+            listener = batched;
+        }
+        super.addListener(listener);
+    }
+
+    @Override
+    public void detectAndSendChanges() {
+        if (!this.isClient) {
+            this.usedSlots.set(this.itemHandler.getUsedSlotCount());
+            this.autoPickup.set(BackpackItem.hasAutoPickup(this.item) ? 1 : 0);
+        }
+        super.detectAndSendChanges();
+        for (BatchedSlotListener listener : this.batchedListeners) {
+            listener.flush(this);
+        }
+    }
+
     @Override
     public void onContainerClosed(PlayerEntity playerIn) {
         super.onContainerClosed(playerIn);
-        // Save the inventory to the backpack's NBT
+        long start = this.isClient ? 0L : CLOSE_TIMER.start();
+        // Save any changes. The inventory itself stays loaded in BackpackStorage until evicted.
         ((BackpackItem) this.item.getItem()).saveInventory(this.item, this.itemHandler);
+        this.itemHandler.stopUsing();
+        CLOSE_TIMER.stop(start);
     }
 
     @Override
@@ -103,13 +279,13 @@ public class BackpackContainer extends Container {
         ItemStack stack = slot.getStack();
         ItemStack newStack = stack.copy();
 
-        int containerSlots = itemHandler.getSlots();
+        int containerSlots = this.windowSize;
         if (index < containerSlots) {
             if (!this.mergeItemStack(stack, containerSlots, this.inventorySlots.size(), true)) {
                 return ItemStack.EMPTY;
             }
             slot.onSlotChanged();
-        } else if (!this.mergeItemStack(stack, 0, containerSlots, false)) {
+        } else if (!moveIntoBackpack(stack)) {
             return ItemStack.EMPTY;
         }
 
@@ -122,6 +298,42 @@ public class BackpackContainer extends Container {
         return slot.onTake(playerIn, newStack);
     }
 
+    /**
+     * Moves as much of the stack as possible into the backpack. On the server, this uses the whole
+     * backpack, not just the visible window, and finds slots through the {@link
+     * BackpackMergeIndex} instead of scanning. The client only knows about the window, but the
+     * server's result is synced afterwards anyway.
+     * <p>
+     * Shift-double-clicking ("move all of this type") sends one shift-click per matching slot, so
+     * it benefits from the index as well.
+     *
+     * @param stack The stack to move, which is shrunk by the amount moved
+     * @return True if anything was moved
+     */
+    private boolean moveIntoBackpack(ItemStack stack) {
+        if (this.isClient) {
+            return this.mergeItemStack(stack, 0, this.windowSize, false);
+        }
+
+        return moveIntoHandler(this.itemHandler, stack);
+    }
+
+    /**
+     * Server side of {@link #moveIntoBackpack}. Kept separate (and static) so the tests can use it
+     * without a player and world.
+     */
+    static boolean moveIntoHandler(BackpackItemHandler handler, ItemStack stack) {
+        // Insert a copy. An empty slot keeps the stack it is given, so inserting the slot's own
+        // stack and then shrinking it would empty the backpack slot too.
+        ItemStack remainder = handler.getMergeIndex().insert(stack.copy());
+        int moved = stack.getCount() - remainder.getCount();
+        if (moved <= 0) {
+            return false;
+        }
+        stack.shrink(moved);
+        return true;
+    }
+
     @Override
     public ItemStack slotClick(int slotId, int dragType, ClickType clickTypeIn, PlayerEntity player) {
         if (slotId < 0 || slotId > inventorySlots.size()) {
@@ -141,20 +353,20 @@ public class BackpackContainer extends Container {
     }
 
     private boolean canTake(int slotId, Slot slot, int button, PlayerEntity player, ClickType clickType) {
-        if (slotId == blocked || slotId <= itemHandler.getSlots() - 1 && isBackpack(player.inventory.getItemStack())) {
+        if (slotId == blocked || slotId <= this.windowSize - 1 && isBackpack(player.inventory.getItemStack())) {
             return false;
         }
 
         // Hotbar swapping via number keys
         if (clickType == ClickType.SWAP) {
-            int hotbarId = itemHandler.getSlots() + 27 + button;
+            int hotbarId = this.windowSize + 27 + button;
             // Block swapping with container
             if (blocked == hotbarId) {
                 return false;
             }
 
             Slot hotbarSlot = getSlot(hotbarId);
-            if (slotId <= itemHandler.getSlots() - 1) {
+            if (slotId <= this.windowSize - 1) {
                 return !isBackpack(slot.getStack()) && !isBackpack(hotbarSlot.getStack());
             }
         }
@@ -0,0 +1,178 @@
+package net.silentchaos512.tutorial.inventory;
+
+import io.netty.buffer.Unpooled;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.ListNBT;
+import net.minecraft.nbt.StringNBT;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.util.NonNullList;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.common.util.Constants;
+import net.minecraftforge.registries.ForgeRegistries;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads and writes backpack contents in a compact, packed format. The usual format (what {@link
+ * net.minecraftforge.items.ItemStackHandler#serializeNBT()} writes) stores a compound for every
+ * stack, repeating the "id", "Count" and "Slot" keys and the full item ID each time. That adds up
+ * quickly in player data files and in every packet that carries a backpack.
+ * <p>
+ * The packed format looks like this:
+ * <ul>
+ *     <li>{@code Size} - the number of slots</li>
+ *     <li>{@code Palette} - a list of the distinct item IDs in the backpack</li>
+ *     <li>{@code Data} - a byte array. First a bitmap of which slots are occupied, then for each
+ *     occupied slot a varint palette index (plus one) and a varint count. A palette index of zero
+ *     means the stack is stored in {@code Stacks} instead.</li>
+ *     <li>{@code Stacks} - stacks which have NBT or capability data, written normally and keyed
+ *     by slot number</li>
+ * </ul>
+ * Only stacks with NBT or capability data (like another mod's energy or fluid storage) need a
+ * compound, and most stacks in a backpack have neither.
+ */
+public final class BackpackInventoryCodec {
+    private static final String NBT_SIZE = "Size";
+    private static final String NBT_PALETTE = "Palette";
+    private static final String NBT_DATA = "Data";
+    private static final String NBT_STACKS = "Stacks";
+    // Where ItemStack.write puts capability data
+    private static final String NBT_FORGE_CAPS = "ForgeCaps";
+
+    private BackpackInventoryCodec() {}
+
+    /**
+     * Checks if the tag is in the packed format. Anything else is assumed to be the old format
+     * written by {@link net.minecraftforge.items.ItemStackHandler#serializeNBT()}.
+     *
+     * @param tag The inventory tag
+     * @return True if the tag is packed
+     */
+    public static boolean isPacked(CompoundNBT tag) {
+        return tag.contains(NBT_DATA, Constants.NBT.TAG_BYTE_ARRAY);
+    }
+
+    public static int getSize(CompoundNBT tag) {
+        return tag.getInt(NBT_SIZE);
+    }
+
+    /**
+     * Reads packed contents into {@code stacks}. Slots which do not fit are ignored.
+     *
+     * @param tag    The inventory tag
+     * @param stacks The list to fill, which should be all empty stacks
+     */
+    public static void read(CompoundNBT tag, NonNullList<ItemStack> stacks) {
+        int size = tag.getInt(NBT_SIZE);
+
+        // Look up each item once, instead of once per slot
+        ListNBT paletteTag = tag.getList(NBT_PALETTE, Constants.NBT.TAG_STRING);
+        Item[] palette = new Item[paletteTag.size()];
+        for (int i = 0; i < palette.length; ++i) {
+            palette[i] = ForgeRegistries.ITEMS.getValue(new ResourceLocation(paletteTag.getString(i)));
+        }
+
+        CompoundNBT stacksTag = tag.getCompound(NBT_STACKS);
+        PacketBuffer buffer = new PacketBuffer(Unpooled.wrappedBuffer(tag.getByteArray(NBT_DATA)));
+        byte[] bitmap = new byte[bitmapLength(size)];
+        buffer.readBytes(bitmap);
+        BitSet occupied = BitSet.valueOf(bitmap);
+
+        for (int slot = occupied.nextSetBit(0); slot >= 0 && slot < size; slot = occupied.nextSetBit(slot + 1)) {
+            int paletteIndex = buffer.readVarInt() - 1;
+            ItemStack stack;
+            if (paletteIndex < 0) {
+                stack = ItemStack.read(stacksTag.getCompound(Integer.toString(slot)));
+            } else {
+                int count = buffer.readVarInt();
+                Item item = palette[paletteIndex];
+                stack = item != null ? new ItemStack(item, count) : ItemStack.EMPTY;
+            }
+            if (slot < stacks.size()) {
+                stacks.set(slot, stack);
+            }
+        }
+    }
+
+    /**
+     * Writes {@code stacks} into {@code tag} in the packed format. The palette and data array are
+     * always rebuilt (they are small), but only the slots in {@code changedSlots} are updated in
+     * {@code Stacks}, since those are the expensive ones.
+     *
+     * @param tag          The inventory tag. Pass an empty compound to write everything.
+     * @param stacks       The contents
+     * @param changedSlots The slots which have changed since {@code tag} was last written
+     */
+    public static void write(CompoundNBT tag, NonNullList<ItemStack> stacks, BitSet changedSlots) {
+        int size = stacks.size();
+        boolean rewriteAll = !isPacked(tag) || tag.getInt(NBT_SIZE) != size;
+
+        CompoundNBT stacksTag = rewriteAll ? new CompoundNBT() : tag.getCompound(NBT_STACKS);
+        ListNBT paletteTag = new ListNBT();
+        Map<Item, Integer> paletteIndices = new HashMap<>();
+        BitSet occupied = new BitSet(size);
+        PacketBuffer entries = new PacketBuffer(Unpooled.buffer(size * 2));
+
+        for (int slot = 0; slot < size; ++slot) {
+            ItemStack stack = stacks.get(slot);
+            boolean changed = rewriteAll || changedSlots.get(slot);
+            if (changed) {
+                stacksTag.remove(Integer.toString(slot));
+            }
+            if (stack.isEmpty()) {
+                continue;
+            }
+
+            occupied.set(slot);
+            String key = Integer.toString(slot);
+            boolean writeFull;
+            if (changed) {
+                // Stacks without a tag can still have capability data, which only a full write keeps
+                CompoundNBT full = stack.write(new CompoundNBT());
+                writeFull = stack.hasTag() || full.contains(NBT_FORGE_CAPS);
+                if (writeFull) {
+                    stacksTag.put(key, full);
+                }
+            } else {
+                // Unchanged, so it was written the same way last time
+                writeFull = stacksTag.contains(key);
+            }
+
+            if (writeFull) {
+                entries.writeVarInt(0);
+            } else {
+                Integer index = paletteIndices.get(stack.getItem());
+                if (index == null) {
+                    index = paletteTag.size();
+                    paletteIndices.put(stack.getItem(), index);
+                    //noinspection ConstantConditions
+                    paletteTag.add(new StringNBT(stack.getItem().getRegistryName().toString()));
+                }
+                entries.writeVarInt(index + 1);
+                entries.writeVarInt(stack.getCount());
+            }
+        }
+
+        byte[] bitmap = occupied.toByteArray();
+        byte[] data = new byte[bitmapLength(size) + entries.readableBytes()];
+        // BitSet.toByteArray trims trailing zero bytes, so the rest of the bitmap stays zeroed
+        System.arraycopy(bitmap, 0, data, 0, bitmap.length);
+        entries.readBytes(data, bitmapLength(size), entries.readableBytes());
+        entries.release();
+
+        // Remove anything left over from the old format
+        tag.remove("Items");
+        tag.putInt(NBT_SIZE, size);
+        tag.put(NBT_PALETTE, paletteTag);
+        tag.putByteArray(NBT_DATA, data);
+        tag.put(NBT_STACKS, stacksTag);
+    }
+
+    private static int bitmapLength(int size) {
+        return (size + 7) / 8;
+    }
+}
@@ -0,0 +1,235 @@
+package net.silentchaos512.tutorial.inventory;
+
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraftforge.items.ItemStackHandler;
+import net.silentchaos512.tutorial.imc.BackpackRules;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * The item handler which holds the contents of a backpack. On the server, these are kept by {@link
+ * BackpackStorage} and handed out through the {@link BackpackCapabilityProvider} attached to each
+ * backpack stack, so the contents are decoded once and then reused by every caller.
+ * <p>
+ * Contents are written in the packed format described in {@link BackpackInventoryCodec}. Each
+ * changed slot is tracked separately, so saving only re-serializes the stacks which changed.
+ */
+public class BackpackItemHandler extends ItemStackHandler {
+    static final String NBT_INVENTORY = "Inventory";
+
+    private final BitSet dirtySlots = new BitSet();
+    // The last thing written by writeSnapshot. Never modified after it is returned.
+    @Nullable private CompoundNBT snapshot;
+    private int users;
+    private int usedSlotCount = -1;
+    private final List<IntConsumer> changeListeners = new ArrayList<>();
+    @Nullable private BackpackMergeIndex mergeIndex;
+    private boolean evicted;
+
+    public BackpackItemHandler(int size) {
+        super(size);
+    }
+
+    /**
+     * Items blacklisted by other mods (see {@link net.silentchaos512.tutorial.imc.BackpackImc})
+     * can't be put in. Items already in the backpack stay where they are.
+     */
+    @Override
+    public boolean isItemValid(int slot, ItemStack stack) {
+        return !BackpackRules.get().isBlacklisted(stack) && super.isItemValid(slot, stack);
+    }
+
+    /**
+     * Creates a handler and loads contents stored on the backpack stack itself. Backpacks used to
+     * store their contents this way, and clients still use this, since they do not have access to
+     * {@link BackpackStorage}.
+     *
+     * @param backpack The backpack item
+     * @param size     The number of slots
+     * @return A new handler with the backpack's contents
+     */
+    public static BackpackItemHandler load(ItemStack backpack, int size) {
+        BackpackItemHandler handler = new BackpackItemHandler(size);
+        if (backpack.hasTag() && backpack.getTag().contains(NBT_INVENTORY)) {
+            CompoundNBT inventory = backpack.getTag().getCompound(NBT_INVENTORY);
+            if (BackpackInventoryCodec.isPacked(inventory)) {
+                BackpackInventoryCodec.read(inventory, handler.stacks);
+            } else {
+                // Original format. deserializeNBT resizes the handler to whatever size was saved.
+                handler.deserializeNBT(inventory);
+                if (handler.getSlots() != size) {
+                    handler.resize(size);
+                }
+            }
+        }
+        return handler;
+    }
+
+    /**
+     * Loads contents which were written by {@link #writeSnapshot()}.
+     *
+     * @param packed The packed inventory
+     */
+    public void read(CompoundNBT packed) {
+        BackpackInventoryCodec.read(packed, this.stacks);
+        usedSlotCount = -1;
+        if (BackpackInventoryCodec.getSize(packed) == getSlots()) {
+            this.snapshot = packed;
+        } else {
+            markDirty();
+        }
+    }
+
+    /**
+     * Writes the contents if anything has changed. The previous snapshot is copied and only the
+     * changed slots are patched in. The returned tag is never modified afterwards, so it is safe to
+     * hand off to another thread.
+     *
+     * @return The packed contents, or null if nothing has changed
+     */
+    @Nullable
+    public CompoundNBT writeSnapshot() {
+        if (dirtySlots.isEmpty()) {
+            return null;
+        }
+
+        CompoundNBT packed = this.snapshot != null ? this.snapshot.copy() : new CompoundNBT();
+        BackpackInventoryCodec.write(packed, this.stacks, dirtySlots);
+        this.snapshot = packed;
+        dirtySlots.clear();
+        return packed;
+    }
+
+    /**
+     * Gets the number of slots which are not empty. This is cached until the contents change.
+     *
+     * @return The number of used slots
+     */
+    public int getUsedSlotCount() {
+        if (usedSlotCount < 0) {
+            int count = 0;
+            for (ItemStack stack : this.stacks) {
+                if (!stack.isEmpty()) ++count;
+            }
+            usedSlotCount = count;
+        }
+        return usedSlotCount;
+    }
+
+    /**
+     * Marks the inventory as being used, usually by an open container. Used inventories are never
+     * evicted from {@link BackpackStorage}. Make sure to call {@link #stopUsing()} when done.
+     */
+    public void startUsing() {
+        ++users;
+    }
+
+    public void stopUsing() {
+        if (users > 0) {
+            --users;
+        }
+    }
+
+    public boolean isInUse() {
+        return users > 0;
+    }
+
+    /**
+     * Checks if this was removed from {@link BackpackStorage}'s cache. Evicted handlers should not
+     * be used anymore, because any further changes will not be saved.
+     *
+     * @return True if evicted
+     */
+    public boolean isEvicted() {
+        return evicted;
+    }
+
+    void setEvicted() {
+        evicted = true;
+    }
+
+    /**
+     * Gets the number of slots which have changed since the last save.
+     *
+     * @return The number of changed slots
+     */
+    public int getDirtyCount() {
+        return dirtySlots.cardinality();
+    }
+
+    public boolean isDirty() {
+        return !dirtySlots.isEmpty();
+    }
+
+    /**
+     * Marks a single slot as changed. Needed when a stack in the handler is modified directly (for
+     * example, vanilla container code calling {@link ItemStack#grow(int)}), which the handler has no
+     * way of noticing on its own.
+     *
+     * @param slot The slot index
+     */
+    public void markDirty(int slot) {
+        dirtySlots.set(slot);
+        usedSlotCount = -1;
+        for (IntConsumer listener : changeListeners) {
+            listener.accept(slot);
+        }
+    }
+
+    /**
+     * Marks every slot as changed.
+     */
+    public void markDirty() {
+        dirtySlots.set(0, getSlots());
+        usedSlotCount = -1;
+        for (IntConsumer listener : changeListeners) {
+            listener.accept(-1);
+        }
+    }
+
+    /**
+     * Gets the index of where items can be inserted, creating it on first use. The index keeps
+     * itself up to date, so it can be shared by everything that inserts into this backpack.
+     *
+     * @return The merge index
+     */
+    public BackpackMergeIndex getMergeIndex() {
+        if (mergeIndex == null) {
+            mergeIndex = new BackpackMergeIndex(this);
+            addChangeListener(mergeIndex);
+        }
+        return mergeIndex;
+    }
+
+    /**
+     * Adds a listener which is called with the slot index whenever a slot changes, or -1 when
+     * every slot may have changed. Used to keep the {@link BackpackMergeIndex} up to date.
+     *
+     * @param listener The listener
+     */
+    public void addChangeListener(IntConsumer listener) {
+        changeListeners.add(listener);
+    }
+
+    public void removeChangeListener(IntConsumer listener) {
+        changeListeners.remove(listener);
+    }
+
+    private void resize(int size) {
+        ItemStackHandler old = new ItemStackHandler(this.stacks);
+        setSize(size);
+        for (int i = 0; i < Math.min(size, old.getSlots()); ++i) {
+            this.stacks.set(i, old.getStackInSlot(i));
+        }
+    }
+
+    @Override
+    protected void onContentsChanged(int slot) {
+        markDirty(slot);
+    }
+}
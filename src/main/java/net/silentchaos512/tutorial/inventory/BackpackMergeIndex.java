@@ -0,0 +1,129 @@
+package net.silentchaos512.tutorial.inventory;
+
+import it.unimi.dsi.fastutil.ints.IntLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.item.ItemStack;
+import net.minecraftforge.items.ItemHandlerHelper;
+import net.silentchaos512.tutorial.imc.BackpackRules;
+
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+
+/**
+ * Keeps track of where items can be inserted into a backpack, so inserting does not need to scan
+ * every slot. {@link net.minecraft.inventory.container.Container#mergeItemStack(ItemStack, int, int,
+ * boolean)} checks every slot for a matching stack, then every slot again for an empty one. That is
+ * fine for a chest, but not for a backpack with thousands of slots.
+ * <p>
+ * The index maps each item key (see {@link BackpackSorter#getKey(ItemStack)}) to the slots holding
+ * a partial stack of it, and keeps a bit set of occupied slots. It listens for changes to the
+ * inventory and updates only the changed slot.
+ */
+public class BackpackMergeIndex implements IntConsumer {
+    private final BackpackItemHandler inventory;
+    private final Long2ObjectMap<IntSet> partialSlots = new Long2ObjectOpenHashMap<>();
+    private final BitSet occupied = new BitSet();
+    // The key each slot is currently indexed under, so it can be removed when the slot changes
+    private final long[] slotKeys;
+    private final boolean[] indexed;
+
+    public BackpackMergeIndex(BackpackItemHandler inventory) {
+        this.inventory = inventory;
+        this.slotKeys = new long[inventory.getSlots()];
+        this.indexed = new boolean[inventory.getSlots()];
+        rebuild();
+    }
+
+    /**
+     * Inserts as much of the stack as possible, first into partial stacks of the same item, then
+     * into empty slots.
+     *
+     * @param stack The stack to insert. Neither modified nor kept by the backpack, which gets a copy,
+     *              so callers are free to shrink it afterwards.
+     * @return The remainder which did not fit, which is never {@code stack} itself
+     */
+    public ItemStack insert(ItemStack stack) {
+        // Blacklisted items would be refused by every slot, so don't bother trying them all
+        if (stack.isEmpty() || BackpackRules.get().isBlacklisted(stack)) {
+            return stack.copy();
+        }
+
+        // Empty slots keep the stack they are given, so hand them a copy instead of the caller's
+        ItemStack remainder = stack.copy();
+        IntSet candidates = partialSlots.get(BackpackSorter.getKey(stack));
+        if (candidates != null) {
+            // Inserting changes the set, so copy it first
+            for (int slot : candidates.toIntArray()) {
+                // Different tags can share a key, so check they really stack
+                if (ItemHandlerHelper.canItemStacksStack(inventory.getStackInSlot(slot), remainder)) {
+                    remainder = inventory.insertItem(slot, remainder, false);
+                    if (remainder.isEmpty()) {
+                        return remainder;
+                    }
+                }
+            }
+        }
+
+        for (int slot = occupied.nextClearBit(0); slot < slotKeys.length; slot = occupied.nextClearBit(slot + 1)) {
+            remainder = inventory.insertItem(slot, remainder, false);
+            if (remainder.isEmpty()) {
+                break;
+            }
+        }
+        return remainder;
+    }
+
+    /**
+     * Called by the inventory when a slot changes.
+     *
+     * @param slot The slot index, or -1 if everything may have changed
+     */
+    @Override
+    public void accept(int slot) {
+        if (slot < 0) {
+            rebuild();
+        } else {
+            update(slot);
+        }
+    }
+
+    private void rebuild() {
+        partialSlots.clear();
+        occupied.clear();
+        for (int i = 0; i < slotKeys.length; ++i) {
+            indexed[i] = false;
+            update(i);
+        }
+    }
+
+    private void update(int slot) {
+        if (slot >= slotKeys.length) return;
+
+        if (indexed[slot]) {
+            IntSet slots = partialSlots.get(slotKeys[slot]);
+            if (slots != null) {
+                slots.remove(slot);
+                if (slots.isEmpty()) {
+                    partialSlots.remove(slotKeys[slot]);
+                }
+            }
+            indexed[slot] = false;
+        }
+
+        ItemStack stack = inventory.getStackInSlot(slot);
+        occupied.set(slot, !stack.isEmpty());
+        if (!stack.isEmpty() && stack.getCount() < Math.min(stack.getMaxStackSize(), inventory.getSlotLimit(slot))) {
+            long key = BackpackSorter.getKey(stack);
+            IntSet slots = partialSlots.get(key);
+            if (slots == null) {
+                slots = new IntLinkedOpenHashSet();
+                partialSlots.put(key, slots);
+            }
+            slots.add(slot);
+            slotKeys[slot] = key;
+            indexed[slot] = true;
+        }
+    }
+}
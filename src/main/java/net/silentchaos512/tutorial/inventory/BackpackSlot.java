@@ -0,0 +1,89 @@
+package net.silentchaos512.tutorial.inventory;
+
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.inventory.IInventory;
+import net.minecraft.inventory.Inventory;
+import net.minecraft.inventory.container.Slot;
+import net.minecraft.item.ItemStack;
+
+import java.util.function.IntSupplier;
+
+/**
+ * A backpack inventory slot. This works much like {@link net.minecraftforge.items.SlotItemHandler},
+ * with two differences:
+ * <ul>
+ *     <li>The slot shows part of a scrolling window. The handler index is the slot's position in
+ *     the window plus the window's current offset, so the same slot can show any part of a large
+ *     backpack.</li>
+ *     <li>Vanilla container code often changes the size of a slot's stack directly and then calls
+ *     {@link #onSlotChanged()}. That is passed on to the {@link BackpackItemHandler} so the slot
+ *     gets saved.</li>
+ * </ul>
+ */
+public class BackpackSlot extends Slot {
+    private static final IInventory EMPTY_INVENTORY = new Inventory(0);
+
+    private final BackpackItemHandler itemHandler;
+    private final IntSupplier windowOffset;
+
+    public BackpackSlot(BackpackItemHandler itemHandler, int windowIndex, IntSupplier windowOffset, int xPosition, int yPosition) {
+        super(EMPTY_INVENTORY, windowIndex, xPosition, yPosition);
+        this.itemHandler = itemHandler;
+        this.windowOffset = windowOffset;
+    }
+
+    /**
+     * Gets the index in the backpack inventory which this slot is currently showing.
+     *
+     * @return The item handler slot index
+     */
+    public int getBackpackIndex() {
+        return this.windowOffset.getAsInt() + getSlotIndex();
+    }
+
+    @Override
+    public boolean isItemValid(ItemStack stack) {
+        return !stack.isEmpty() && this.itemHandler.isItemValid(getBackpackIndex(), stack);
+    }
+
+    @Override
+    public ItemStack getStack() {
+        return this.itemHandler.getStackInSlot(getBackpackIndex());
+    }
+
+    @Override
+    public void putStack(ItemStack stack) {
+        this.itemHandler.setStackInSlot(getBackpackIndex(), stack);
+        this.onSlotChanged();
+    }
+
+    @Override
+    public void onSlotChange(ItemStack oldStackIn, ItemStack newStackIn) {
+    }
+
+    @Override
+    public void onSlotChanged() {
+        super.onSlotChanged();
+        this.itemHandler.markDirty(getBackpackIndex());
+    }
+
+    @Override
+    public int getSlotStackLimit() {
+        return this.itemHandler.getSlotLimit(getBackpackIndex());
+    }
+
+    @Override
+    public int getItemStackLimit(ItemStack stack) {
+        return Math.min(getSlotStackLimit(), stack.getMaxStackSize());
+    }
+
+    @Override
+    public boolean canTakeStack(PlayerEntity playerIn) {
+        return !this.itemHandler.extractItem(getBackpackIndex(), 1, true).isEmpty();
+    }
+
+    @Override
+    public ItemStack decrStackSize(int amount) {
+        return this.itemHandler.extractItem(getBackpackIndex(), amount, false);
+    }
+}
@@ -0,0 +1,136 @@
+package net.silentchaos512.tutorial.inventory;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraftforge.items.IItemHandlerModifiable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Sorts and compacts a backpack in one pass. Partial stacks of the same item are merged, then the
+ * items are laid out from the first slot in the configured order, leaving all empty slots at the
+ * end.
+ * <p>
+ * Stacks are grouped with a map keyed by a {@code long} (the item's numeric ID and the hash of its
+ * tag), so there is no need to compare every stack with every other stack. Two different tags can
+ * have the same hash, so each key holds a small list of groups which are compared properly.
+ */
+public final class BackpackSorter {
+    private BackpackSorter() {}
+
+    public enum SortOrder {
+        /**
+         * By item ID, so items from the same mod end up together
+         */
+        ID(Comparator.comparing(group -> String.valueOf(group.stack.getItem().getRegistryName()))),
+        /**
+         * By display name
+         */
+        NAME(Comparator.comparing(group -> group.stack.getDisplayName().getString())),
+        /**
+         * Largest total count first
+         */
+        COUNT(Comparator.<Group>comparingInt(group -> group.total).reversed()
+                .thenComparing(group -> String.valueOf(group.stack.getItem().getRegistryName())));
+
+        private final Comparator<Group> comparator;
+
+        SortOrder(Comparator<Group> comparator) {
+            this.comparator = comparator;
+        }
+    }
+
+    /**
+     * Sorts and compacts the inventory. Only slots whose contents actually change are set, so only
+     * those are saved and synced.
+     *
+     * @param inventory The backpack inventory
+     * @param order     The sort order
+     */
+    public static void sort(IItemHandlerModifiable inventory, SortOrder order) {
+        List<Group> groups = collectGroups(inventory);
+        groups.sort(order.comparator);
+
+        int slot = 0;
+        for (Group group : groups) {
+            int remaining = group.total;
+            int maxStackSize = Math.min(group.stack.getMaxStackSize(), inventory.getSlotLimit(slot));
+            while (remaining > 0 && slot < inventory.getSlots()) {
+                int count = Math.min(remaining, maxStackSize);
+                ItemStack stack = group.stack.copy();
+                stack.setCount(count);
+                setIfChanged(inventory, slot++, stack);
+                remaining -= count;
+            }
+        }
+
+        while (slot < inventory.getSlots()) {
+            setIfChanged(inventory, slot++, ItemStack.EMPTY);
+        }
+    }
+
+    private static List<Group> collectGroups(IItemHandlerModifiable inventory) {
+        Long2ObjectMap<List<Group>> groupsByKey = new Long2ObjectOpenHashMap<>();
+        List<Group> allGroups = new ArrayList<>();
+
+        for (int i = 0; i < inventory.getSlots(); ++i) {
+            ItemStack stack = inventory.getStackInSlot(i);
+            if (stack.isEmpty()) continue;
+
+            long key = getKey(stack);
+            List<Group> candidates = groupsByKey.get(key);
+            if (candidates == null) {
+                candidates = new ArrayList<>(1);
+                groupsByKey.put(key, candidates);
+            }
+
+            Group group = null;
+            for (Group candidate : candidates) {
+                if (ItemStack.areItemStackTagsEqual(candidate.stack, stack)) {
+                    group = candidate;
+                    break;
+                }
+            }
+            if (group == null) {
+                group = new Group(stack);
+                candidates.add(group);
+                allGroups.add(group);
+            }
+            group.total += stack.getCount();
+        }
+
+        return allGroups;
+    }
+
+    /**
+     * Gets a key which is the same for stacks which can be merged. Stacks with different keys can
+     * never be merged, but stacks with the same key still need their tags compared.
+     *
+     * @param stack The stack
+     * @return A key made of the item's numeric ID and tag hash
+     */
+    static long getKey(ItemStack stack) {
+        long itemId = Item.getIdFromItem(stack.getItem());
+        int tagHash = stack.hasTag() ? stack.getTag().hashCode() : 0;
+        return (itemId << 32) | (tagHash & 0xFFFFFFFFL);
+    }
+
+    private static void setIfChanged(IItemHandlerModifiable inventory, int slot, ItemStack stack) {
+        if (!ItemStack.areItemStacksEqual(inventory.getStackInSlot(slot), stack)) {
+            inventory.setStackInSlot(slot, stack);
+        }
+    }
+
+    private static final class Group {
+        private final ItemStack stack;
+        private int total;
+
+        private Group(ItemStack stack) {
+            this.stack = stack;
+        }
+    }
+}
@@ -0,0 +1,571 @@
+package net.silentchaos512.tutorial.inventory;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.item.ItemEntity;
+import net.minecraft.entity.item.ItemFrameEntity;
+import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.inventory.IInventory;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.ClassInheritanceMultiMap;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.dimension.DimensionType;
+import net.minecraftforge.common.capabilities.ICapabilityProvider;
+import net.minecraftforge.common.util.Constants;
+import net.minecraftforge.event.entity.EntityLeaveWorldEvent;
+import net.minecraftforge.event.entity.item.ItemExpireEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.event.world.ChunkEvent;
+import net.minecraftforge.items.CapabilityItemHandler;
+import net.silentchaos512.tutorial.Config;
+import net.silentchaos512.tutorial.TutorialMod;
+import net.silentchaos512.tutorial.item.BackpackItem;
+import net.silentchaos512.tutorial.metrics.ByteGauge;
+import net.silentchaos512.tutorial.metrics.Metrics;
+import net.silentchaos512.tutorial.metrics.Timer;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores backpack contents outside of the backpack stacks. Each backpack stack only carries a
+ * UUID, so copying a backpack (which Minecraft does constantly) no longer copies everything inside
+ * it.
+ * <p>
+ * Contents are saved in region files in the world's data folder ({@code
+ * data/tutorial_backpacks/r.XX.dat}). Each region holds the backpacks whose UUIDs fall in the
+ * same bucket, so saving one backpack only rewrites one small file. Decoded inventories are kept in
+ * a bounded LRU cache. When the cache is full, the least recently used backpack is evicted, and if
+ * it has unsaved changes, they are written in the background.
+ * <p>
+ * Decoded region files are cached as well (a few of them, also LRU), so loading an evicted
+ * backpack usually does not read and decompress a file on the server thread. The writer thread
+ * puts each region it writes into that cache, so recently saved backpacks are always cached. A
+ * cached region tag is never modified. Writes build a new one, sharing the unchanged entries.
+ * <p>
+ * The storage only exists on the logical server, and should only be used from the server thread.
+ * {@link #get()} returns null anywhere else.
+ * <p>
+ * Since contents are found by the UUID on the stack, a copied backpack stack (creative
+ * middle-click, {@code /give} with NBT, item duplicating mods) would share one inventory with the
+ * original. {@link #getInventory} watches for this: if a second stack with the same UUID is used
+ * while the first still exists, the copy gets a new UUID and its own copy of the contents. "Still
+ * exists" can't be told from a stack object alone, since an unloaded stack may not be garbage
+ * collected yet. So stacks are forgotten as soon as they leave the world: when their chunk
+ * unloads (containers and entities in it), when their entity leaves the world, or when their
+ * player logs out.
+ * <p>
+ * Entries are removed when a dropped backpack despawns or is destroyed by lava, fire or the void
+ * (see {@link #onItemExpire} and {@link #onEntityLeaveWorld}). Other ways of destroying an item,
+ * like explosions and cactus, can't be told apart from an item moving into a hopper, so those
+ * entries are kept.
+ */
+public final class BackpackStorage {
+    private static final String NBT_ID = "BackpackId";
+    private static final int REGION_COUNT = 256;
+    private static final int REGION_CACHE_SIZE = 16;
+
+    private static final Timer WRITE_TIMER = Metrics.timer("backpack.storage.write");
+    // Compressed size of whole region files, which hold many backpacks each
+    private static final ByteGauge REGION_BYTES = Metrics.bytes("backpack.storage.region_bytes");
+    // Queued in place of an entry to delete it. Compared by identity.
+    private static final CompoundNBT DELETED = new CompoundNBT();
+
+    @Nullable private static BackpackStorage instance;
+
+    private final MinecraftServer server;
+    private final File directory;
+    private final int capacity;
+    // accessOrder = true turns a LinkedHashMap into an LRU. The eldest entry is first.
+    private final LinkedHashMap<UUID, BackpackItemHandler> cache = new LinkedHashMap<>(16, 0.75f, true);
+    // The stack each backpack ID was last used through, to notice copies. See getInventory.
+    private final Map<UUID, WeakReference<ItemStack>> holders = new HashMap<>();
+    // Decoded region files, as an LRU. Guarded by itself. Used by the server and writer threads.
+    private final LinkedHashMap<Integer, CompoundNBT> regionCache = new LinkedHashMap<>(16, 0.75f, true);
+    // Written inventories which are not on disk yet, by region. Guarded by itself.
+    private final Map<Integer, Map<UUID, CompoundNBT>> pendingWrites = new HashMap<>();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Tutorial Mod Backpack Writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private BackpackStorage(MinecraftServer server, File directory, int capacity) {
+        this.server = server;
+        this.directory = directory;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Creates the storage for the server. Call when the server is starting.
+     *
+     * @param server The server
+     */
+    public static void open(MinecraftServer server) {
+        File worldDir = server.getWorld(DimensionType.OVERWORLD).getSaveHandler().getWorldDirectory();
+        File directory = new File(worldDir, "data/tutorial_backpacks");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            TutorialMod.LOGGER.error("Could not create backpack storage directory {}", directory);
+        }
+        instance = new BackpackStorage(server, directory, Config.COMMON.backpackCacheSize.get());
+    }
+
+    /**
+     * Saves everything and waits for all writes to finish. Call when the server is stopping.
+     */
+    public static void close() {
+        if (instance != null) {
+            instance.saveAll();
+            instance.writer.shutdown();
+            try {
+                if (!instance.writer.awaitTermination(1, TimeUnit.MINUTES)) {
+                    TutorialMod.LOGGER.error("Timed out waiting for backpacks to save");
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            instance = null;
+        }
+    }
+
+    /**
+     * Gets the storage, but only on the server thread.
+     *
+     * @return The storage, or null if not on the server thread
+     */
+    @Nullable
+    public static BackpackStorage get() {
+        BackpackStorage storage = instance;
+        if (storage != null && storage.server.isOnExecutionThread()) {
+            return storage;
+        }
+        return null;
+    }
+
+    /**
+     * Gets the inventory of the backpack, loading it if needed. Backpacks which do not have an ID
+     * yet are given one. If they have contents stored in the old, on-stack format, those are moved
+     * into the storage.
+     *
+     * @param backpack The backpack item
+     * @param size     The number of slots
+     * @return The backpack's inventory
+     */
+    public BackpackItemHandler getInventory(ItemStack backpack, int size) {
+        UUID id = getOrCreateId(backpack);
+        ItemStack holder = getHolder(id);
+        if (holder != null && holder != backpack) {
+            // Two live stacks with one ID, so this one is a copy. Give it its own contents.
+            BackpackItemHandler original = getInventory(holder, size);
+            UUID newId = UUID.randomUUID();
+            backpack.getOrCreateTag().putUniqueId(NBT_ID, newId);
+            TutorialMod.LOGGER.debug("Backpack {} was copied, the copy is now {}", id, newId);
+            return putCopy(newId, backpack, original, size);
+        }
+        holders.put(id, new WeakReference<>(backpack));
+
+        BackpackItemHandler handler = cache.get(id);
+        if (handler != null) {
+            return handler;
+        }
+
+        CompoundNBT stored = readEntry(id);
+        if (stored != null) {
+            handler = new BackpackItemHandler(size);
+            handler.read(stored);
+        } else {
+            // Either a new backpack, or one from before the storage existed
+            handler = BackpackItemHandler.load(backpack, size);
+            if (backpack.hasTag() && backpack.getTag().contains(BackpackItemHandler.NBT_INVENTORY)) {
+                backpack.getTag().remove(BackpackItemHandler.NBT_INVENTORY);
+                handler.markDirty();
+            }
+        }
+
+        cache.put(id, handler);
+        evictIfNeeded();
+        return handler;
+    }
+
+    /**
+     * Gets the stack the ID was last used through, if it still exists. A stack which was emptied
+     * (picked up, split or moved, which all shrink the old stack) or given a new ID does not
+     * count.
+     */
+    @Nullable
+    private ItemStack getHolder(UUID id) {
+        WeakReference<ItemStack> ref = holders.get(id);
+        ItemStack holder = ref != null ? ref.get() : null;
+        if (holder == null || holder.isEmpty() || !id.equals(getId(holder))) {
+            holders.remove(id);
+            return null;
+        }
+        return holder;
+    }
+
+    private BackpackItemHandler putCopy(UUID id, ItemStack backpack, BackpackItemHandler original, int size) {
+        BackpackItemHandler handler = new BackpackItemHandler(size);
+        for (int slot = 0; slot < Math.min(size, original.getSlots()); ++slot) {
+            handler.setStackInSlot(slot, original.getStackInSlot(slot).copy());
+        }
+        handler.markDirty();
+        holders.put(id, new WeakReference<>(backpack));
+        cache.put(id, handler);
+        evictIfNeeded();
+        return handler;
+    }
+
+    /**
+     * Forgets the stacks in a player's inventory, which are about to be thrown away as the player
+     * logs out. Otherwise the new stacks made when they log back in would look like copies.
+     *
+     * @param event The event
+     */
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        BackpackStorage storage = get();
+        if (storage != null) {
+            PlayerInventory inventory = event.getPlayer().inventory;
+            inventory.mainInventory.forEach(storage::release);
+            inventory.offHandInventory.forEach(storage::release);
+        }
+    }
+
+    /**
+     * Forgets the stacks in the containers and entities of an unloading chunk. When the chunk
+     * loads again, its stacks are new objects, and must not look like copies of the old ones.
+     *
+     * @param event The event
+     */
+    public static void onChunkUnload(ChunkEvent.Unload event) {
+        BackpackStorage storage = get();
+        if (storage == null || !(event.getChunk() instanceof Chunk)) return;
+
+        Chunk chunk = (Chunk) event.getChunk();
+        for (TileEntity tileEntity : chunk.getTileEntityMap().values()) {
+            storage.releaseAll(tileEntity);
+        }
+        for (ClassInheritanceMultiMap<Entity> entities : chunk.getEntityLists()) {
+            for (Entity entity : entities) {
+                storage.releaseEntity(entity);
+            }
+        }
+    }
+
+    private void releaseEntity(Entity entity) {
+        if (entity instanceof ItemEntity) {
+            release(((ItemEntity) entity).getItem());
+        } else if (entity instanceof ItemFrameEntity) {
+            release(((ItemFrameEntity) entity).getDisplayedItem());
+        }
+        entity.getEquipmentAndArmor().forEach(this::release);
+        releaseAll(entity);
+    }
+
+    private void releaseAll(ICapabilityProvider provider) {
+        provider.getCapability(CapabilityItemHandler.ITEM_HANDLER_CAPABILITY).ifPresent(itemHandler -> {
+            for (int slot = 0; slot < itemHandler.getSlots(); ++slot) {
+                release(itemHandler.getStackInSlot(slot));
+            }
+        });
+        if (provider instanceof IInventory) {
+            IInventory inventory = (IInventory) provider;
+            for (int slot = 0; slot < inventory.getSizeInventory(); ++slot) {
+                release(inventory.getStackInSlot(slot));
+            }
+        }
+    }
+
+    /**
+     * Forgets the stack, if it is the one its backpack was last used through.
+     */
+    private void release(ItemStack stack) {
+        UUID id = getId(stack);
+        if (id != null) {
+            WeakReference<ItemStack> ref = holders.get(id);
+            if (ref != null && ref.get() == stack) {
+                holders.remove(id);
+            }
+        }
+    }
+
+    /**
+     * Deletes the contents of a dropped backpack which despawned.
+     *
+     * @param event The event
+     */
+    public static void onItemExpire(ItemExpireEvent event) {
+        // Another listener may have extended its life
+        if (!event.isCanceled()) {
+            removeDestroyed(event.getEntityItem().getItem());
+        }
+    }
+
+    /**
+     * Deletes the contents of a dropped backpack which was destroyed by lava, fire or the void.
+     * Entities also leave the world when their chunk unloads, when they change dimension, and
+     * when they are picked up (by a player or hopper), so only these causes are counted.
+     *
+     * @param event The event
+     */
+    public static void onEntityLeaveWorld(EntityLeaveWorldEvent event) {
+        BackpackStorage storage = get();
+        if (storage == null || event.getWorld().isRemote) return;
+
+        // Whatever the reason, the stacks it holds are not in the world any more
+        storage.releaseEntity(event.getEntity());
+        if (!(event.getEntity() instanceof ItemEntity)) return;
+
+        ItemEntity entity = (ItemEntity) event.getEntity();
+        boolean sameDimension = entity.dimension == event.getWorld().getDimension().getType();
+        boolean destroyed = entity.isBurning() || entity.isInLava() || entity.posY < -64;
+        if (!entity.isAlive() && sameDimension && destroyed) {
+            removeDestroyed(entity.getItem());
+        }
+    }
+
+    private static void removeDestroyed(ItemStack stack) {
+        BackpackStorage storage = get();
+        UUID id = getId(stack);
+        if (storage != null && id != null && stack.getItem() instanceof BackpackItem) {
+            storage.remove(id);
+        }
+    }
+
+    /**
+     * Deletes a backpack's contents, from the cache and its region file.
+     *
+     * @param id The backpack ID
+     */
+    public void remove(UUID id) {
+        BackpackItemHandler handler = cache.remove(id);
+        if (handler != null) {
+            handler.setEvicted();
+        }
+        holders.remove(id);
+        int region = getRegion(id);
+        synchronized (pendingWrites) {
+            pendingWrites.computeIfAbsent(region, r -> new HashMap<>()).put(id, DELETED);
+        }
+        writer.execute(() -> flushRegion(region));
+    }
+
+    /**
+     * Writes any changes to the backpack's inventory. The actual file write happens in the
+     * background.
+     *
+     * @param backpack The backpack item
+     * @param handler  The backpack's inventory
+     * @return The contents which were written, or null if nothing had changed. Do not modify.
+     */
+    @Nullable
+    public CompoundNBT save(ItemStack backpack, BackpackItemHandler handler) {
+        UUID id = getId(backpack);
+        return id != null ? save(id, handler) : null;
+    }
+
+    /**
+     * Writes all cached backpacks which have changes.
+     */
+    public void saveAll() {
+        cache.forEach(this::save);
+    }
+
+    @Nullable
+    private CompoundNBT save(UUID id, BackpackItemHandler handler) {
+        CompoundNBT snapshot = handler.writeSnapshot();
+        if (snapshot != null) {
+            int region = getRegion(id);
+            synchronized (pendingWrites) {
+                pendingWrites.computeIfAbsent(region, r -> new HashMap<>()).put(id, snapshot);
+            }
+            writer.execute(() -> flushRegion(region));
+        }
+        return snapshot;
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<UUID, BackpackItemHandler>> iterator = cache.entrySet().iterator();
+        while (cache.size() > capacity && iterator.hasNext()) {
+            Map.Entry<UUID, BackpackItemHandler> entry = iterator.next();
+            BackpackItemHandler handler = entry.getValue();
+            // Never evict a backpack someone has open
+            if (!handler.isInUse()) {
+                save(entry.getKey(), handler);
+                handler.setEvicted();
+                iterator.remove();
+            }
+        }
+    }
+
+    @Nullable
+    private CompoundNBT readEntry(UUID id) {
+        int region = getRegion(id);
+        // Changes which have not been written yet are newer than what is on disk
+        synchronized (pendingWrites) {
+            Map<UUID, CompoundNBT> pending = pendingWrites.get(region);
+            if (pending != null && pending.containsKey(id)) {
+                CompoundNBT tag = pending.get(id);
+                return tag != DELETED ? tag : null;
+            }
+        }
+
+        CompoundNBT regionTag = getRegionTag(region);
+        String key = id.toString();
+        if (regionTag.contains(key, Constants.NBT.TAG_COMPOUND)) {
+            return regionTag.getCompound(key);
+        }
+        return null;
+    }
+
+    /**
+     * Writes all pending changes in the region to disk. Runs on the writer thread. Entries are only
+     * removed from {@link #pendingWrites} once the file is written, so a read on the server thread
+     * always finds either the pending entry or the new file.
+     *
+     * @param region The region index
+     */
+    private void flushRegion(int region) {
+        Map<UUID, CompoundNBT> toWrite;
+        synchronized (pendingWrites) {
+            Map<UUID, CompoundNBT> pending = pendingWrites.get(region);
+            if (pending == null || pending.isEmpty()) {
+                // Already written by an earlier task
+                return;
+            }
+            toWrite = new HashMap<>(pending);
+        }
+
+        // Never modify the cached tag, the server thread may be reading it. The entries themselves
+        // are only ever replaced, so they can be shared.
+        CompoundNBT cached = getRegionTag(region);
+        CompoundNBT regionTag = new CompoundNBT();
+        cached.keySet().forEach(key -> regionTag.put(key, cached.get(key)));
+        toWrite.forEach((id, tag) -> {
+            if (tag == DELETED) {
+                regionTag.remove(id.toString());
+            } else {
+                regionTag.put(id.toString(), tag);
+            }
+        });
+        if (!writeRegion(region, regionTag)) {
+            return;
+        }
+        cacheRegion(region, regionTag);
+
+        synchronized (pendingWrites) {
+            Map<UUID, CompoundNBT> pending = pendingWrites.get(region);
+            List<UUID> written = new ArrayList<>();
+            // Only remove entries which have not been replaced in the meantime
+            toWrite.forEach((id, tag) -> {
+                if (pending.get(id) == tag) written.add(id);
+            });
+            written.forEach(pending::remove);
+        }
+    }
+
+    /**
+     * Gets a region's entries, from the cache or from disk. The file is read while holding the
+     * cache lock, so a region can't be read by one thread while the other caches a newer version.
+     * Do not modify the returned tag.
+     */
+    private CompoundNBT getRegionTag(int region) {
+        synchronized (regionCache) {
+            CompoundNBT regionTag = regionCache.get(region);
+            if (regionTag == null) {
+                regionTag = readRegion(region);
+                cacheRegion(region, regionTag);
+            }
+            return regionTag;
+        }
+    }
+
+    private void cacheRegion(int region, CompoundNBT regionTag) {
+        synchronized (regionCache) {
+            regionCache.put(region, regionTag);
+            Iterator<Integer> iterator = regionCache.keySet().iterator();
+            while (regionCache.size() > REGION_CACHE_SIZE && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    private CompoundNBT readRegion(int region) {
+        File file = getRegionFile(region);
+        if (!file.isFile()) {
+            return new CompoundNBT();
+        }
+        try (InputStream stream = new FileInputStream(file)) {
+            return CompressedStreamTools.readCompressed(stream);
+        } catch (IOException ex) {
+            TutorialMod.LOGGER.error("Failed to read backpack region {}", file, ex);
+            return new CompoundNBT();
+        }
+    }
+
+    private boolean writeRegion(int region, CompoundNBT regionTag) {
+        File file = getRegionFile(region);
+        File tempFile = new File(directory, file.getName() + ".tmp");
+        long start = WRITE_TIMER.start();
+        try {
+            try (OutputStream stream = new FileOutputStream(tempFile)) {
+                CompressedStreamTools.writeCompressed(regionTag, stream);
+            }
+            REGION_BYTES.record(tempFile.length());
+            // Replace the old file in one step, so a crash never leaves a half-written region
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            WRITE_TIMER.stop(start);
+            return true;
+        } catch (IOException ex) {
+            TutorialMod.LOGGER.error("Failed to write backpack region {}", file, ex);
+            return false;
+        }
+    }
+
+    private File getRegionFile(int region) {
+        return new File(directory, String.format("r.%02x.dat", region));
+    }
+
+    private static int getRegion(UUID id) {
+        return (int) (id.getLeastSignificantBits() & (REGION_COUNT - 1));
+    }
+
+    @Nullable
+    public static UUID getId(ItemStack backpack) {
+        CompoundNBT tag = backpack.getTag();
+        if (tag != null && tag.hasUniqueId(NBT_ID)) {
+            return tag.getUniqueId(NBT_ID);
+        }
+        return null;
+    }
+
+    private static UUID getOrCreateId(ItemStack backpack) {
+        UUID id = getId(backpack);
+        if (id == null) {
+            id = UUID.randomUUID();
+            backpack.getOrCreateTag().putUniqueId(NBT_ID, id);
+        }
+        return id;
+    }
+}
@@ -0,0 +1,69 @@
+package net.silentchaos512.tutorial.inventory;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.inventory.container.Container;
+import net.minecraft.inventory.container.IContainerListener;
+import net.minecraft.item.ItemStack;
+import net.minecraft.util.NonNullList;
+import net.minecraftforge.fml.network.PacketDistributor;
+import net.silentchaos512.tutorial.network.BackpackSlotsPacket;
+import net.silentchaos512.tutorial.network.Network;
+
+/**
+ * Wraps a player's container listener, collecting slot changes instead of sending each one right
+ * away. {@link BackpackContainer#detectAndSendChanges()} calls {@link #flush(Container)} when it is
+ * done, which sends everything in one {@link BackpackSlotsPacket}. Everything else is passed on to
+ * the player unchanged.
+ */
+class BatchedSlotListener implements IContainerListener {
+    private final ServerPlayerEntity player;
+    private final Int2ObjectMap<ItemStack> pending = new Int2ObjectLinkedOpenHashMap<>();
+
+    BatchedSlotListener(ServerPlayerEntity player) {
+        this.player = player;
+    }
+
+    void flush(Container container) {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        // Same as ServerPlayerEntity#sendSlotContents: when the client caused the change itself, it
+        // already knows the result, so there is nothing to send
+        if (!player.isChangingQuantityOnly) {
+            int[] slots = pending.keySet().toIntArray();
+            ItemStack[] stacks = pending.values().toArray(new ItemStack[0]);
+            Network.CHANNEL.send(PacketDistributor.PLAYER.with(() -> player), new BackpackSlotsPacket(container.windowId, slots, stacks));
+        }
+        pending.clear();
+    }
+
+    @Override
+    public void sendAllContents(Container containerToSend, NonNullList<ItemStack> itemsList) {
+        player.sendAllContents(containerToSend, itemsList);
+    }
+
+    @Override
+    public void sendSlotContents(Container containerToSend, int slotInd, ItemStack stack) {
+        // The stack is already a copy (see Container#detectAndSendChanges)
+        pending.put(slotInd, stack);
+    }
+
+    @Override
+    public void sendWindowProperty(Container containerIn, int varToUpdate, int newValue) {
+        player.sendWindowProperty(containerIn, varToUpdate, newValue);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        // Container#addListener checks if the listener is already added
+        return obj instanceof BatchedSlotListener && ((BatchedSlotListener) obj).player == player;
+    }
+
+    @Override
+    public int hashCode() {
+        return player.hashCode();
+    }
+}
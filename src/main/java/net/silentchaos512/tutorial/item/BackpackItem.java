@@ -1,45 +1,125 @@
 package net.silentchaos512.tutorial.item;
 
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.inventory.container.SimpleNamedContainerProvider;
 import net.minecraft.item.DyeColor;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemGroup;
 import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.ListNBT;
+import net.minecraft.nbt.StringNBT;
 import net.minecraft.util.ActionResult;
 import net.minecraft.util.ActionResultType;
 import net.minecraft.util.Hand;
 import net.minecraft.util.NonNullList;
+import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.text.TranslationTextComponent;
 import net.minecraft.world.World;
+import net.minecraftforge.common.capabilities.ICapabilityProvider;
+import net.minecraftforge.common.util.Constants;
+import net.minecraftforge.items.CapabilityItemHandler;
 import net.minecraftforge.items.IItemHandler;
-import net.minecraftforge.items.ItemStackHandler;
 import net.silentchaos512.tutorial.TutorialMod;
+import net.silentchaos512.tutorial.inventory.BackpackCapabilityProvider;
 import net.silentchaos512.tutorial.inventory.BackpackContainer;
+import net.silentchaos512.tutorial.inventory.BackpackItemHandler;
+import net.silentchaos512.tutorial.inventory.BackpackStorage;
+import net.silentchaos512.tutorial.metrics.ByteGauge;
+import net.silentchaos512.tutorial.metrics.Metrics;
+import net.silentchaos512.tutorial.metrics.Timer;
 
-public class BackpackItem extends Item {
+import javax.annotation.Nullable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+public class BackpackItem extends Item implements ITintable {
     private static final String NBT_COLOR = "BackpackColor";
+    private static final String NBT_AUTO_PICKUP = "AutoPickup";
+
+    private static final Timer SAVE_TIMER = Metrics.timer("backpack.save");
+    private static final ByteGauge SAVE_BYTES = Metrics.bytes("backpack.save_bytes");
+
+    // ItemStack does not override equals or hashCode, so this is keyed by identity
+    private static final Map<ItemStack, CachedColor> COLOR_CACHE = Collections.synchronizedMap(new WeakHashMap<>());
 
-    public BackpackItem() {
+    private final int inventorySize;
+
+    /**
+     * Creates a backpack with the given number of slots. Backpacks larger than six rows are shown
+     * through a scrolling window (see {@link BackpackContainer}), so any multiple of 9 works.
+     *
+     * @param inventorySize The number of slots
+     */
+    public BackpackItem(int inventorySize) {
         super(new Properties().group(TutorialMod.ITEM_GROUP).maxStackSize(1));
+        this.inventorySize = inventorySize;
     }
 
     public int getInventorySize(ItemStack stack) {
-        return 27;
+        return this.inventorySize;
     }
 
+    /**
+     * Gets the backpack's inventory. This is the live handler attached to the stack (see {@link
+     * BackpackCapabilityProvider}), so changes to it are visible to every other caller. On the
+     * server, the contents are kept in {@link BackpackStorage}, not on the stack. Call {@link
+     * #saveInventory(ItemStack, IItemHandler)} to save changes.
+     *
+     * @param stack The backpack
+     * @return The backpack's item handler
+     */
     public IItemHandler getInventory(ItemStack stack) {
-        ItemStackHandler stackHandler = new ItemStackHandler(getInventorySize(stack));
-        stackHandler.deserializeNBT(stack.getOrCreateTag().getCompound("Inventory"));
-        return stackHandler;
+        return stack.getCapability(CapabilityItemHandler.ITEM_HANDLER_CAPABILITY, null)
+                .orElseGet(() -> BackpackItemHandler.load(stack, getInventorySize(stack)));
     }
 
+    /**
+     * Saves any changes to the backpack's inventory. The file write happens in the background.
+     * This does nothing on the client, where backpack contents are never saved.
+     *
+     * @param stack       The backpack
+     * @param itemHandler The backpack's inventory, from {@link #getInventory(ItemStack)}
+     */
     public void saveInventory(ItemStack stack, IItemHandler itemHandler) {
-        if (itemHandler instanceof ItemStackHandler) {
-            stack.getOrCreateTag().put("Inventory", ((ItemStackHandler) itemHandler).serializeNBT());
+        BackpackStorage storage = BackpackStorage.get();
+        if (storage != null && itemHandler instanceof BackpackItemHandler) {
+            long start = SAVE_TIMER.start();
+            CompoundNBT saved = storage.save(stack, (BackpackItemHandler) itemHandler);
+            SAVE_TIMER.stop(start);
+            // Measuring means serializing the tag again, so only when metrics are on
+            if (saved != null && Metrics.isEnabled()) {
+                SAVE_BYTES.record(getSerializedSize(saved));
+            }
         }
     }
 
+    /**
+     * Gets the size of a tag as written to disk, before compression.
+     */
+    private static long getSerializedSize(CompoundNBT tag) {
+        CountingOutputStream counter = new CountingOutputStream(ByteStreams.nullOutputStream());
+        try {
+            CompressedStreamTools.write(tag, new DataOutputStream(counter));
+        } catch (IOException ex) {
+            // Nothing to fail, the bytes go nowhere
+        }
+        return counter.getCount();
+    }
+
+    @Override
+    public ICapabilityProvider initCapabilities(ItemStack stack, @Nullable CompoundNBT nbt) {
+        return new BackpackCapabilityProvider(stack);
+    }
+
     @Override
     public ActionResult<ItemStack> onItemRightClick(World worldIn, PlayerEntity playerIn, Hand handIn) {
         if (!worldIn.isRemote) {
@@ -51,17 +131,110 @@ public class BackpackItem extends Item {
         return new ActionResult<>(ActionResultType.SUCCESS, playerIn.getHeldItem(handIn));
     }
 
+    @Override
+    public int getTint(ItemStack stack) {
+        return getBackpackColor(stack);
+    }
+
+    @Override
+    public void setTint(ItemStack stack, int color) {
+        setBackpackColor(stack, color);
+    }
+
+    /**
+     * Gets the backpack's color. This never changes the stack, so it is safe to call from anywhere,
+     * including rendering code.
+     *
+     * @param stack The backpack
+     * @return The color, or 0 if it has not been dyed
+     */
     public static int getBackpackColor(ItemStack stack) {
-        return stack.getOrCreateTag().getInt(NBT_COLOR);
+        CompoundNBT tag = stack.getTag();
+        return tag != null ? tag.getInt(NBT_COLOR) : 0;
+    }
+
+    /**
+     * Gets the backpack's color, using the cached value if the stack has not changed. Item colors
+     * are checked for every backpack rendered, every frame (hotbar, inventory, item frames, dropped
+     * items...), so this is what {@link #getItemColor(ItemStack, int)} uses.
+     * <p>
+     * The cache is weak, so it does not keep stacks around. An entry is only used if the stack still
+     * has the same tag object. {@link #setBackpackColor(ItemStack, int)} changes the tag in place,
+     * so it removes the entry itself.
+     *
+     * @param stack The backpack
+     * @return The color, or 0 if it has not been dyed
+     */
+    public static int getCachedBackpackColor(ItemStack stack) {
+        CompoundNBT tag = stack.getTag();
+        CachedColor cached = COLOR_CACHE.get(stack);
+        if (cached != null && cached.tag == tag) {
+            return cached.color;
+        }
+
+        int color = getBackpackColor(stack);
+        COLOR_CACHE.put(stack, new CachedColor(tag, color));
+        return color;
     }
 
     public static void setBackpackColor(ItemStack stack, int color) {
         stack.getOrCreateTag().putInt(NBT_COLOR, color);
+        COLOR_CACHE.remove(stack);
+    }
+
+    /**
+     * Checks if the backpack picks up items automatically. See {@link
+     * net.silentchaos512.tutorial.inventory.BackpackAutoPickup}.
+     *
+     * @param stack The backpack
+     * @return True if auto-pickup is on
+     */
+    public static boolean hasAutoPickup(ItemStack stack) {
+        return stack.hasTag() && stack.getTag().contains(NBT_AUTO_PICKUP, Constants.NBT.TAG_LIST);
+    }
+
+    /**
+     * Gets the IDs of the items the backpack picks up automatically.
+     *
+     * @param stack The backpack
+     * @return The item IDs, or an empty collection if auto-pickup is off
+     */
+    public static Collection<ResourceLocation> getAutoPickupFilter(ItemStack stack) {
+        if (!hasAutoPickup(stack)) {
+            return Collections.emptyList();
+        }
+        ListNBT list = stack.getTag().getList(NBT_AUTO_PICKUP, Constants.NBT.TAG_STRING);
+        Collection<ResourceLocation> ids = new ArrayList<>();
+        for (int i = 0; i < list.size(); ++i) {
+            ResourceLocation id = ResourceLocation.tryCreate(list.getString(i));
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Sets the items the backpack picks up automatically.
+     *
+     * @param stack The backpack
+     * @param ids   The item IDs, or null to turn auto-pickup off
+     */
+    public static void setAutoPickupFilter(ItemStack stack, @Nullable Collection<ResourceLocation> ids) {
+        if (ids == null) {
+            if (stack.hasTag()) {
+                stack.getTag().remove(NBT_AUTO_PICKUP);
+            }
+            return;
+        }
+        ListNBT list = new ListNBT();
+        ids.forEach(id -> list.add(new StringNBT(id.toString())));
+        stack.getOrCreateTag().put(NBT_AUTO_PICKUP, list);
     }
 
     public static int getItemColor(ItemStack stack, int tintIndex) {
         if (tintIndex == 0) {
-            return getBackpackColor(stack);
+            return getCachedBackpackColor(stack);
         }
         return 0xFFFFFF;
     }
@@ -76,4 +249,14 @@ public class BackpackItem extends Item {
             }
         }
     }
+
+    private static final class CachedColor {
+        @Nullable private final CompoundNBT tag;
+        private final int color;
+
+        private CachedColor(@Nullable CompoundNBT tag, int color) {
+            this.tag = tag;
+            this.color = color;
+        }
+    }
 }
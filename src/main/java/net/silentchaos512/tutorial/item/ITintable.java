@@ -0,0 +1,14 @@
+package net.silentchaos512.tutorial.item;
+
+import net.minecraft.item.ItemStack;
+
+/**
+ * Items which store their own tint color, for {@link net.silentchaos512.tutorial.crafting.recipe.TintRecipe}.
+ * Items which do not implement this can still be tinted. The color is then stored like leather
+ * armor's, in the {@code display.color} tag.
+ */
+public interface ITintable {
+    int getTint(ItemStack stack);
+
+    void setTint(ItemStack stack, int color);
+}
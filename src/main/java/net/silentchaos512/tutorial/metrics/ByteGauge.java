@@ -0,0 +1,41 @@
+package net.silentchaos512.tutorial.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks amounts of data, like the size of files written. Keeps the total, the number of records
+ * and the last value.
+ */
+public final class ByteGauge extends Metric {
+    private final LongAdder total = new LongAdder();
+    private final LongAdder count = new LongAdder();
+    private final AtomicLong last = new AtomicLong();
+
+    ByteGauge(String name) {
+        super(name);
+    }
+
+    public void record(long bytes) {
+        if (Metrics.isEnabled()) {
+            this.total.add(bytes);
+            this.count.increment();
+            this.last.set(bytes);
+        }
+    }
+
+    @Override
+    void reset() {
+        this.total.reset();
+        this.count.reset();
+        this.last.set(0);
+    }
+
+    @Override
+    String describe(double seconds) {
+        long totalBytes = this.total.sum();
+        long records = this.count.sum();
+        return String.format("%d bytes in %d writes (%.0f B/s), avg %d, last %d",
+                totalBytes, records, totalBytes / seconds, records > 0 ? totalBytes / records : 0, this.last.get());
+    }
+}
@@ -0,0 +1,41 @@
+package net.silentchaos512.tutorial.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events, like backpacks being opened.
+ */
+public final class Counter extends Metric {
+    private final LongAdder count = new LongAdder();
+
+    Counter(String name) {
+        super(name);
+    }
+
+    public void inc() {
+        if (Metrics.isEnabled()) {
+            this.count.increment();
+        }
+    }
+
+    public void add(long amount) {
+        if (Metrics.isEnabled()) {
+            this.count.add(amount);
+        }
+    }
+
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    @Override
+    void reset() {
+        this.count.reset();
+    }
+
+    @Override
+    String describe(double seconds) {
+        long total = getCount();
+        return String.format("%d (%.2f/s)", total, total / seconds);
+    }
+}
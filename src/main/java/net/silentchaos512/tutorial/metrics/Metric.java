@@ -0,0 +1,27 @@
+package net.silentchaos512.tutorial.metrics;
+
+/**
+ * Base class for everything in {@link Metrics}. Metrics are updated from several threads (the
+ * server, the client and background writers), so implementations use atomics, not locks.
+ */
+public abstract class Metric {
+    private final String name;
+
+    Metric(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    abstract void reset();
+
+    /**
+     * Describes the metric's current values, for {@code /tutorial metrics}.
+     *
+     * @param seconds The time since the last reset, for rates
+     * @return A short description
+     */
+    abstract String describe(double seconds);
+}
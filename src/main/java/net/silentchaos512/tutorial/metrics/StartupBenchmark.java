@@ -0,0 +1,57 @@
+package net.silentchaos512.tutorial.metrics;
+
+import net.minecraft.server.MinecraftServer;
+import net.silentchaos512.tutorial.TutorialMod;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Locale;
+
+/**
+ * Headless startup benchmark for dedicated servers. When the {@code tutorial.startupBenchmark}
+ * system property is set to a file name, the server adds a line to that CSV file as soon as it is
+ * ready for players, then shuts itself down. The "runBenchmarkServer" run config and "gradlew
+ * benchmarkStartup" task in build.gradle use this to compare startup time for different numbers
+ * of gems.
+ */
+public final class StartupBenchmark {
+    private static final String PROPERTY = "tutorial.startupBenchmark";
+    private static final String HEADER = "time,gems,registry_ms,mod_total_ms,ready_ms";
+
+    private StartupBenchmark() {}
+
+    /**
+     * Call when the server is ready. Does nothing unless running the benchmark on a dedicated
+     * server.
+     *
+     * @param server   The server
+     * @param gemCount The number of gem variants loaded
+     */
+    public static void onServerReady(MinecraftServer server, int gemCount) {
+        String fileName = System.getProperty(PROPERTY);
+        if (fileName == null || !server.isDedicatedServer()) {
+            return;
+        }
+
+        long readyMillis = StartupProfiler.getUptimeMillis();
+        long registryNanos = StartupProfiler.getTotalNanos("ModBlocks.registerAll") + StartupProfiler.getTotalNanos("ModItems.registerAll");
+        String line = String.format(Locale.ROOT, "%s,%d,%.1f,%.1f,%d",
+                Instant.now(), gemCount, registryNanos / 1e6, StartupProfiler.getTotalNanos() / 1e6, readyMillis);
+
+        Path file = Paths.get(fileName);
+        try {
+            String text = (Files.exists(file) ? "" : HEADER + System.lineSeparator()) + line + System.lineSeparator();
+            Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException ex) {
+            TutorialMod.LOGGER.error("Failed to write startup benchmark to {}", file, ex);
+        }
+
+        TutorialMod.LOGGER.info("Startup benchmark: {} gems, ready in {} ms. Shutting down.", gemCount, readyMillis);
+        server.initiateShutdown(false);
+    }
+}
@@ -0,0 +1,188 @@
+package net.silentchaos512.tutorial.metrics;
+
+import net.minecraftforge.eventbus.api.Event;
+import net.minecraftforge.eventbus.api.EventPriority;
+import net.minecraftforge.eventbus.api.GenericEvent;
+import net.minecraftforge.eventbus.api.IEventBus;
+import net.silentchaos512.tutorial.TutorialMod;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Times the mod's startup: each lifecycle listener, the steps in the mod constructor, and the lazy
+ * suppliers which create blocks and items. The results are written to the log when loading is
+ * complete, so slow steps are easy to spot in a server's latest.log.
+ * <p>
+ * Unlike {@link Metrics}, this is always on. It only adds a couple of clock reads per listener,
+ * and listeners only run a few times.
+ * <p>
+ * Listeners must be added with {@link #addListener} or {@link #addGenericListener} to be timed.
+ * Those take the event class explicitly, because Forge works out the event type of a plain {@code
+ * addListener(Consumer)} from the lambda itself, which does not work for a wrapped lambda.
+ */
+public final class StartupProfiler {
+    // Keeps the order steps first ran in. Mod bus events can fire on worker threads, so guard with itself.
+    private static final Map<String, Step> STEPS = new LinkedHashMap<>();
+
+    private StartupProfiler() {}
+
+    public static <E extends Event> void addListener(IEventBus bus, String name, Class<E> eventType, Consumer<E> listener) {
+        bus.addListener(EventPriority.NORMAL, false, eventType, timed(name, listener));
+    }
+
+    /**
+     * Adds a timed listener for a generic event, like {@code RegistryEvent.Register<Block>}.
+     *
+     * @param bus                The event bus
+     * @param name               The name in the startup report
+     * @param genericClassFilter The generic type, like {@code Block.class}
+     * @param eventType          The event class, like {@code RegistryEvent.Register.class}
+     * @param listener           The listener
+     */
+    @SuppressWarnings("unchecked")
+    public static <T, E extends GenericEvent<? extends T>> void addGenericListener(IEventBus bus, String name, Class<T> genericClassFilter, Class<? super E> eventType, Consumer<E> listener) {
+        bus.addGenericListener(genericClassFilter, EventPriority.NORMAL, false, (Class<E>) eventType, timed(name, listener));
+    }
+
+    private static <E> Consumer<E> timed(String name, Consumer<E> listener) {
+        Step step = getStep(name, false);
+        return event -> {
+            long start = System.nanoTime();
+            try {
+                listener.accept(event);
+            } finally {
+                step.record(System.nanoTime() - start);
+            }
+        };
+    }
+
+    /**
+     * Runs and times a step which is not an event listener, like part of the mod constructor.
+     *
+     * @param name   The name in the startup report
+     * @param action The step
+     */
+    public static void time(String name, Runnable action) {
+        Step step = getStep(name, false);
+        long start = System.nanoTime();
+        try {
+            action.run();
+        } finally {
+            step.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Wraps a supplier to count and time the objects it creates. Used for the {@link
+     * net.minecraft.util.LazyLoadBase}s in {@link net.silentchaos512.tutorial.init.Gem}, which
+     * should each load once, during registration. These run inside other steps, so they are not
+     * added to the total.
+     *
+     * @param name     The name in the startup report
+     * @param supplier The supplier
+     * @param <T>      The type of object supplied
+     * @return A supplier which does the same, but is counted
+     */
+    public static <T> Supplier<T> counted(String name, Supplier<T> supplier) {
+        Step step = getStep(name, true);
+        return () -> {
+            long start = System.nanoTime();
+            try {
+                return supplier.get();
+            } finally {
+                step.record(System.nanoTime() - start);
+            }
+        };
+    }
+
+    private static Step getStep(String name, boolean nested) {
+        synchronized (STEPS) {
+            return STEPS.computeIfAbsent(name, n -> new Step(n, nested));
+        }
+    }
+
+    /**
+     * Gets the time since the JVM started, which includes Forge and every other mod.
+     *
+     * @return The time in milliseconds
+     */
+    public static long getUptimeMillis() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+
+    /**
+     * Gets the total time of a step.
+     *
+     * @param name The step's name
+     * @return The total time in nanoseconds, or 0 if the step never ran
+     */
+    public static long getTotalNanos(String name) {
+        synchronized (STEPS) {
+            Step step = STEPS.get(name);
+            return step != null ? step.totalNanos.get() : 0L;
+        }
+    }
+
+    /**
+     * Gets the total time of every step, not counting nested steps twice.
+     *
+     * @return The total time in nanoseconds
+     */
+    public static long getTotalNanos() {
+        long total = 0;
+        synchronized (STEPS) {
+            for (Step step : STEPS.values()) {
+                if (!step.nested) {
+                    total += step.totalNanos.get();
+                }
+            }
+        }
+        return total;
+    }
+
+    public static List<String> report() {
+        List<String> lines = new ArrayList<>();
+        synchronized (STEPS) {
+            for (Step step : STEPS.values()) {
+                long count = step.count.get();
+                if (count > 0) {
+                    String name = step.nested ? "  " + step.name : step.name;
+                    lines.add(String.format("  %-40s %10s  (%d %s)", name, Metrics.formatNanos(step.totalNanos.get()), count, count == 1 ? "call" : "calls"));
+                }
+            }
+        }
+        lines.add(String.format("  %-40s %10s", "Total", Metrics.formatNanos(getTotalNanos())));
+        lines.add(String.format("  %-40s %8dms", "Since JVM start", getUptimeMillis()));
+        return lines;
+    }
+
+    public static void logReport(String title) {
+        StringBuilder builder = new StringBuilder("Tutorial Mod startup report (").append(title).append("):");
+        report().forEach(line -> builder.append(System.lineSeparator()).append(line));
+        TutorialMod.LOGGER.info(builder.toString());
+    }
+
+    private static final class Step {
+        private final String name;
+        private final boolean nested;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+
+        private Step(String name, boolean nested) {
+            this.name = name;
+            this.nested = nested;
+        }
+
+        private void record(long nanos) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+        }
+    }
+}
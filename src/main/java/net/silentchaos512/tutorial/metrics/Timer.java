@@ -0,0 +1,120 @@
+package net.silentchaos512.tutorial.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Times an operation, and keeps enough of a histogram to estimate percentiles. Use it like this:
+ * <pre>
+ * long start = TIMER.start();
+ * doSomething();
+ * TIMER.stop(start);
+ * </pre>
+ * Times go in buckets, four per power of two, so percentiles are within 25% of the real value. That
+ * is plenty to tell 50 microseconds from 5 milliseconds, and recording is just a few atomic adds.
+ */
+public final class Timer extends Metric {
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int BUCKET_COUNT = 64 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    Timer(String name) {
+        super(name);
+    }
+
+    /**
+     * Starts timing. When metrics are off, this does not even read the clock.
+     *
+     * @return The start time to pass to {@link #stop(long)}, or 0 if metrics are off
+     */
+    public long start() {
+        return Metrics.isEnabled() ? System.nanoTime() : 0L;
+    }
+
+    public void stop(long start) {
+        if (start != 0L) {
+            record(System.nanoTime() - start);
+        }
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) return;
+        this.buckets.incrementAndGet(getBucket(nanos));
+        this.count.increment();
+        this.totalNanos.add(nanos);
+        this.maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private static int getBucket(long value) {
+        if (value < (1 << SUB_BUCKET_BITS)) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (msb - SUB_BUCKET_BITS)) & ((1 << SUB_BUCKET_BITS) - 1);
+        return (msb << SUB_BUCKET_BITS) + sub;
+    }
+
+    private static long getBucketMax(int bucket) {
+        if (bucket < (1 << SUB_BUCKET_BITS)) {
+            return bucket;
+        }
+        int msb = bucket >>> SUB_BUCKET_BITS;
+        int sub = bucket & ((1 << SUB_BUCKET_BITS) - 1);
+        return (((long) (1 << SUB_BUCKET_BITS) + sub + 1) << (msb - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Estimates a percentile from the histogram.
+     *
+     * @param percentile The percentile, from 0 to 1
+     * @return The estimated time in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            total += this.buckets.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            seen += this.buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(getBucketMax(i), this.maxNanos.get());
+            }
+        }
+        return this.maxNanos.get();
+    }
+
+    @Override
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            this.buckets.set(i, 0);
+        }
+        this.count.reset();
+        this.totalNanos.reset();
+        this.maxNanos.set(0);
+    }
+
+    @Override
+    String describe(double seconds) {
+        long calls = this.count.sum();
+        if (calls == 0) {
+            return "0 calls";
+        }
+        return String.format("%d calls (%.2f/s), mean %s, p50 %s, p99 %s, max %s",
+                calls, calls / seconds,
+                Metrics.formatNanos(this.totalNanos.sum() / calls),
+                Metrics.formatNanos(getPercentile(0.5)),
+                Metrics.formatNanos(getPercentile(0.99)),
+                Metrics.formatNanos(this.maxNanos.get()));
+    }
+}
@@ -0,0 +1,64 @@
+package net.silentchaos512.tutorial.network;
+
+import net.minecraft.item.ItemStack;
+import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.fml.DistExecutor;
+import net.minecraftforge.fml.network.NetworkEvent;
+import net.silentchaos512.tutorial.client.ClientNetworkHandler;
+
+import java.util.function.Supplier;
+
+/**
+ * Sends every changed slot of a backpack container in one packet. Vanilla sends one packet per
+ * changed slot, which adds up quickly when shift-clicking, sorting or scrolling a backpack.
+ */
+public class BackpackSlotsPacket {
+    private final int windowId;
+    private final int[] slots;
+    private final ItemStack[] stacks;
+
+    public BackpackSlotsPacket(int windowId, int[] slots, ItemStack[] stacks) {
+        this.windowId = windowId;
+        this.slots = slots;
+        this.stacks = stacks;
+    }
+
+    public int getWindowId() {
+        return windowId;
+    }
+
+    public int[] getSlots() {
+        return slots;
+    }
+
+    public ItemStack[] getStacks() {
+        return stacks;
+    }
+
+    public static BackpackSlotsPacket decode(PacketBuffer buffer) {
+        int windowId = buffer.readVarInt();
+        int count = buffer.readVarInt();
+        int[] slots = new int[count];
+        ItemStack[] stacks = new ItemStack[count];
+        for (int i = 0; i < count; ++i) {
+            slots[i] = buffer.readVarInt();
+            stacks[i] = buffer.readItemStack();
+        }
+        return new BackpackSlotsPacket(windowId, slots, stacks);
+    }
+
+    public void encode(PacketBuffer buffer) {
+        buffer.writeVarInt(this.windowId);
+        buffer.writeVarInt(this.slots.length);
+        for (int i = 0; i < this.slots.length; ++i) {
+            buffer.writeVarInt(this.slots[i]);
+            buffer.writeItemStack(this.stacks[i]);
+        }
+    }
+
+    public static void handle(BackpackSlotsPacket packet, Supplier<NetworkEvent.Context> context) {
+        context.get().enqueueWork(() -> DistExecutor.runWhenOn(Dist.CLIENT, () -> () -> ClientNetworkHandler.handleBackpackSlots(packet)));
+        context.get().setPacketHandled(true);
+    }
+}
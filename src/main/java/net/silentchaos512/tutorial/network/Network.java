@@ -0,0 +1,44 @@
+package net.silentchaos512.tutorial.network;
+
+import net.minecraftforge.fml.network.NetworkRegistry;
+import net.minecraftforge.fml.network.simple.SimpleChannel;
+import net.silentchaos512.tutorial.TutorialMod;
+
+/**
+ * The mod's network channel. Packets are registered here, each with a unique index, an encoder, a
+ * decoder and a handler. The version string must match on the client and server, so change it
+ * whenever packets change in an incompatible way.
+ */
+public final class Network {
+    private static final String VERSION = "tutorial-net-1";
+
+    public static final SimpleChannel CHANNEL = NetworkRegistry.ChannelBuilder.named(TutorialMod.getId("network"))
+            .clientAcceptedVersions(VERSION::equals)
+            .serverAcceptedVersions(VERSION::equals)
+            .networkProtocolVersion(() -> VERSION)
+            .simpleChannel();
+
+    private Network() {}
+
+    /**
+     * Registers packets. Call from the mod constructor.
+     */
+    public static void init() {
+        CHANNEL.registerMessage(1, ScrollBackpackPacket.class,
+                ScrollBackpackPacket::encode,
+                ScrollBackpackPacket::decode,
+                ScrollBackpackPacket::handle);
+        CHANNEL.registerMessage(2, BackpackSlotsPacket.class,
+                BackpackSlotsPacket::encode,
+                BackpackSlotsPacket::decode,
+                BackpackSlotsPacket::handle);
+        CHANNEL.registerMessage(3, SortBackpackPacket.class,
+                SortBackpackPacket::encode,
+                SortBackpackPacket::decode,
+                SortBackpackPacket::handle);
+        CHANNEL.registerMessage(4, ToggleAutoPickupPacket.class,
+                ToggleAutoPickupPacket::encode,
+                ToggleAutoPickupPacket::decode,
+                ToggleAutoPickupPacket::handle);
+    }
+}
@@ -0,0 +1,41 @@
+package net.silentchaos512.tutorial.network;
+
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.fml.network.NetworkEvent;
+import net.silentchaos512.tutorial.inventory.BackpackContainer;
+
+import java.util.function.Supplier;
+
+/**
+ * Sent by the client when the player scrolls a backpack window. The server moves the window, then
+ * the normal container sync sends the slots which now show something different.
+ */
+public class ScrollBackpackPacket {
+    private final int windowId;
+    private final int row;
+
+    public ScrollBackpackPacket(int windowId, int row) {
+        this.windowId = windowId;
+        this.row = row;
+    }
+
+    public static ScrollBackpackPacket decode(PacketBuffer buffer) {
+        return new ScrollBackpackPacket(buffer.readVarInt(), buffer.readVarInt());
+    }
+
+    public void encode(PacketBuffer buffer) {
+        buffer.writeVarInt(this.windowId);
+        buffer.writeVarInt(this.row);
+    }
+
+    public static void handle(ScrollBackpackPacket packet, Supplier<NetworkEvent.Context> context) {
+        context.get().enqueueWork(() -> {
+            ServerPlayerEntity player = context.get().getSender();
+            if (player != null && player.openContainer instanceof BackpackContainer && player.openContainer.windowId == packet.windowId) {
+                ((BackpackContainer) player.openContainer).setScrollRow(packet.row);
+            }
+        });
+        context.get().setPacketHandled(true);
+    }
+}
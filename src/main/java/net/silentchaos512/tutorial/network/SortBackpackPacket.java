@@ -0,0 +1,39 @@
+package net.silentchaos512.tutorial.network;
+
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.fml.network.NetworkEvent;
+import net.silentchaos512.tutorial.inventory.BackpackContainer;
+
+import java.util.function.Supplier;
+
+/**
+ * Sent by the client when the player presses the sort button. The server sorts the backpack, and
+ * the changed slots are sent back in a single {@link BackpackSlotsPacket}.
+ */
+public class SortBackpackPacket {
+    private final int windowId;
+
+    public SortBackpackPacket(int windowId) {
+        this.windowId = windowId;
+    }
+
+    public static SortBackpackPacket decode(PacketBuffer buffer) {
+        return new SortBackpackPacket(buffer.readVarInt());
+    }
+
+    public void encode(PacketBuffer buffer) {
+        buffer.writeVarInt(this.windowId);
+    }
+
+    public static void handle(SortBackpackPacket packet, Supplier<NetworkEvent.Context> context) {
+        context.get().enqueueWork(() -> {
+            ServerPlayerEntity player = context.get().getSender();
+            if (player != null && player.openContainer instanceof BackpackContainer && player.openContainer.windowId == packet.windowId) {
+                ((BackpackContainer) player.openContainer).sort();
+                player.openContainer.detectAndSendChanges();
+            }
+        });
+        context.get().setPacketHandled(true);
+    }
+}
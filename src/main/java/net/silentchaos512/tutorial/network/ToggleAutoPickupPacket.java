@@ -0,0 +1,39 @@
+package net.silentchaos512.tutorial.network;
+
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.fml.network.NetworkEvent;
+import net.silentchaos512.tutorial.inventory.BackpackContainer;
+
+import java.util.function.Supplier;
+
+/**
+ * Sent by the client when the player presses the auto-pickup button. The server turns auto-pickup
+ * on or off for the open backpack. See {@link net.silentchaos512.tutorial.inventory.BackpackAutoPickup}.
+ */
+public class ToggleAutoPickupPacket {
+    private final int windowId;
+
+    public ToggleAutoPickupPacket(int windowId) {
+        this.windowId = windowId;
+    }
+
+    public static ToggleAutoPickupPacket decode(PacketBuffer buffer) {
+        return new ToggleAutoPickupPacket(buffer.readVarInt());
+    }
+
+    public void encode(PacketBuffer buffer) {
+        buffer.writeVarInt(this.windowId);
+    }
+
+    public static void handle(ToggleAutoPickupPacket packet, Supplier<NetworkEvent.Context> context) {
+        context.get().enqueueWork(() -> {
+            ServerPlayerEntity player = context.get().getSender();
+            if (player != null && player.openContainer instanceof BackpackContainer && player.openContainer.windowId == packet.windowId) {
+                ((BackpackContainer) player.openContainer).toggleAutoPickup();
+                player.openContainer.detectAndSendChanges();
+            }
+        });
+        context.get().setPacketHandled(true);
+    }
+}
@@ -0,0 +1,283 @@
+package net.silentchaos512.tutorial.resources;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import net.minecraft.resources.IPackFinder;
+import net.minecraft.resources.IResourcePack;
+import net.minecraft.resources.ResourcePackInfo;
+import net.minecraft.resources.ResourcePackList;
+import net.minecraft.resources.ResourcePackType;
+import net.minecraft.resources.data.IMetadataSectionSerializer;
+import net.minecraft.resources.data.PackMetadataSection;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.text.StringTextComponent;
+import net.minecraftforge.fml.ModList;
+import net.silentchaos512.tutorial.TutorialMod;
+import net.silentchaos512.tutorial.init.Gem;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * A resource pack (and data pack) which exists only in memory. It holds the blockstates, models,
+ * translations, loot tables, recipes and tags for every {@link Gem}, filled in from the templates
+ * in the mod jar (gems/templates). So adding a gem does not mean copying 20 JSON files, and
+ * hundreds of gems do not mean thousands of files in the jar.
+ * <p>
+ * Only the list of file names is made up front, which is quick. A file's contents are made when
+ * the game asks for it, and templates are only read once. The pack has the lowest priority, so
+ * any real resource pack or data pack can still replace these files. That is also how you would
+ * give a single gem a different model, for example.
+ * <p>
+ * Textures are not generated. Each gem still needs its own textures (textures/block/NAME_ore.png,
+ * textures/block/NAME_block.png and textures/item/NAME.png).
+ */
+public final class GemResourcePack implements IResourcePack {
+    private static final String NAME = "tutorial_gems";
+    // The pack format for 1.14.x
+    private static final int PACK_FORMAT = 4;
+    private static final String TEMPLATE_PATH = "gems/templates/";
+
+    private static GemResourcePack instance;
+
+    /**
+     * Adds the pack to the list of available packs. Both the client's resource packs and the
+     * server's data packs use this same finder. The pack is always enabled.
+     */
+    private static final IPackFinder FINDER = new IPackFinder() {
+        @Override
+        public <T extends ResourcePackInfo> void addPackInfosToMap(Map<String, T> nameToPackMap, ResourcePackInfo.IFactory<T> packInfoFactory) {
+            T info = ResourcePackInfo.createResourcePack(NAME, true, GemResourcePack::get, packInfoFactory, ResourcePackInfo.Priority.BOTTOM);
+            if (info != null) {
+                nameToPackMap.put(NAME, info);
+            }
+        }
+    };
+
+    /** The file names and how to make their contents, by pack type */
+    private final Map<ResourcePackType, Map<ResourceLocation, Supplier<String>>> resources = new EnumMap<>(ResourcePackType.class);
+    private final Map<ResourcePackType, Set<String>> namespaces = new EnumMap<>(ResourcePackType.class);
+    private final Map<String, String> templates = new ConcurrentHashMap<>();
+
+    private GemResourcePack(Collection<Gem> gems) {
+        for (ResourcePackType type : ResourcePackType.values()) {
+            resources.put(type, new HashMap<>());
+            namespaces.put(type, new HashSet<>());
+        }
+
+        for (Gem gem : gems) {
+            String name = gem.getName();
+            String ore = name + "_ore";
+            String block = name + "_block";
+            Map<String, String> oreVars = ImmutableMap.of("gem", name, "block", ore);
+            Map<String, String> blockVars = ImmutableMap.of("gem", name, "block", block);
+
+            // Client resources
+            addTemplate(ResourcePackType.CLIENT_RESOURCES, TutorialMod.getId("blockstates/" + ore + ".json"), "blockstate", oreVars);
+            addTemplate(ResourcePackType.CLIENT_RESOURCES, TutorialMod.getId("blockstates/" + block + ".json"), "blockstate", blockVars);
+            addTemplate(ResourcePackType.CLIENT_RESOURCES, TutorialMod.getId("models/block/" + ore + ".json"), "block_model", oreVars);
+            addTemplate(ResourcePackType.CLIENT_RESOURCES, TutorialMod.getId("models/block/" + block + ".json"), "block_model", blockVars);
+            addTemplate(ResourcePackType.CLIENT_RESOURCES, TutorialMod.getId("models/item/" + ore + ".json"), "block_item_model", oreVars);
+            addTemplate(ResourcePackType.CLIENT_RESOURCES, TutorialMod.getId("models/item/" + block + ".json"), "block_item_model", blockVars);
+            addTemplate(ResourcePackType.CLIENT_RESOURCES, TutorialMod.getId("models/item/" + name + ".json"), "gem_item_model", oreVars);
+
+            // Server data
+            addTemplate(ResourcePackType.SERVER_DATA, TutorialMod.getId("loot_tables/blocks/" + ore + ".json"), "ore_loot_table", oreVars);
+            addTemplate(ResourcePackType.SERVER_DATA, TutorialMod.getId("loot_tables/blocks/" + block + ".json"), "block_loot_table", blockVars);
+            addTemplate(ResourcePackType.SERVER_DATA, TutorialMod.getId("recipes/" + name + ".json"), "gem_recipe", oreVars);
+            addTemplate(ResourcePackType.SERVER_DATA, TutorialMod.getId("recipes/" + block + ".json"), "storage_block_recipe", blockVars);
+            addTemplate(ResourcePackType.SERVER_DATA, TutorialMod.getId("recipes/smelting/" + name + ".json"), "smelting_recipe", oreVars);
+            addTemplate(ResourcePackType.SERVER_DATA, TutorialMod.getId("recipes/blasting/" + name + ".json"), "blasting_recipe", oreVars);
+            addTag("items/gems/" + name, TutorialMod.getId(name).toString());
+            addTag("items/ores/" + name, TutorialMod.getId(ore).toString());
+            addTag("items/storage_blocks/" + name, TutorialMod.getId(block).toString());
+            addTag("blocks/ores/" + name, TutorialMod.getId(ore).toString());
+            addTag("blocks/storage_blocks/" + name, TutorialMod.getId(block).toString());
+        }
+
+        // Files which list every gem
+        addParentTag("items/gems", gems);
+        addParentTag("items/ores", gems);
+        addParentTag("items/storage_blocks", gems);
+        addParentTag("blocks/ores", gems);
+        addParentTag("blocks/storage_blocks", gems);
+        add(ResourcePackType.CLIENT_RESOURCES, TutorialMod.getId("lang/en_us.json"), () -> makeTranslations(gems));
+    }
+
+    /**
+     * Gets the pack, creating it the first time. Gems must be loaded first.
+     *
+     * @return The pack
+     */
+    public static synchronized GemResourcePack get() {
+        if (instance == null) {
+            instance = new GemResourcePack(Gem.values());
+        }
+        return instance;
+    }
+
+    /**
+     * Adds the pack to a resource pack list. For the client, call this from the mod constructor,
+     * with {@code Minecraft.getInstance().getResourcePackList()}. For the server, call this in
+     * {@link net.minecraftforge.fml.event.server.FMLServerAboutToStartEvent}, with {@code
+     * server.getResourcePacks()}.
+     *
+     * @param packList The list of resource packs or data packs
+     */
+    public static void addTo(ResourcePackList<?> packList) {
+        packList.addPackFinder(FINDER);
+    }
+
+    private void add(ResourcePackType type, ResourceLocation id, Supplier<String> contents) {
+        resources.get(type).put(id, contents);
+        namespaces.get(type).add(id.getNamespace());
+    }
+
+    private void addTemplate(ResourcePackType type, ResourceLocation id, String template, Map<String, String> vars) {
+        add(type, id, () -> fillTemplate(getTemplate(template), vars));
+    }
+
+    private void addTag(String path, String value) {
+        addTemplate(ResourcePackType.SERVER_DATA, new ResourceLocation("forge", "tags/" + path + ".json"), "tag", ImmutableMap.of("value", value));
+    }
+
+    /**
+     * Adds a tag like forge:gems, which includes forge:gems/ruby, forge:gems/sapphire, etc.
+     */
+    private void addParentTag(String path, Collection<Gem> gems) {
+        add(ResourcePackType.SERVER_DATA, new ResourceLocation("forge", "tags/" + path + ".json"), () -> {
+            JsonArray values = new JsonArray();
+            gems.forEach(gem -> values.add("#forge:" + path.substring(path.indexOf('/') + 1) + "/" + gem.getName()));
+            JsonObject json = new JsonObject();
+            json.addProperty("replace", false);
+            json.add("values", values);
+            return json.toString();
+        });
+    }
+
+    private static String makeTranslations(Collection<Gem> gems) {
+        // Lang files from all packs are merged, so this does not replace the mod's own en_us.json
+        JsonObject json = new JsonObject();
+        for (Gem gem : gems) {
+            json.addProperty("block.tutorial." + gem.getName() + "_block", "Block of " + gem.getDisplayName());
+            json.addProperty("block.tutorial." + gem.getName() + "_ore", gem.getDisplayName() + " Ore");
+            json.addProperty("item.tutorial." + gem.getName(), gem.getDisplayName());
+        }
+        return json.toString();
+    }
+
+    private String getTemplate(String name) {
+        return templates.computeIfAbsent(name, n -> {
+            Path path = ModList.get().getModFileById(TutorialMod.MOD_ID).getFile().findResource(TEMPLATE_PATH + n + ".json");
+            try {
+                return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Missing gem template " + n, ex);
+            }
+        });
+    }
+
+    /**
+     * Replaces each ${key} in the template with its value.
+     */
+    private static String fillTemplate(String template, Map<String, String> vars) {
+        String result = template;
+        for (Map.Entry<String, String> entry : vars.entrySet()) {
+            result = result.replace("${" + entry.getKey() + "}", entry.getValue());
+        }
+        return result;
+    }
+
+    @Override
+    public InputStream getRootResourceStream(String fileName) throws IOException {
+        // No pack.png, and pack.mcmeta is handled by getMetadata
+        throw new FileNotFoundException(fileName);
+    }
+
+    @Override
+    public InputStream getResourceStream(ResourcePackType type, ResourceLocation location) throws IOException {
+        Supplier<String> contents = resources.get(type).get(location);
+        if (contents == null) {
+            throw new FileNotFoundException(location.toString());
+        }
+        try {
+            return new ByteArrayInputStream(contents.get().getBytes(StandardCharsets.UTF_8));
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    @Override
+    public Collection<ResourceLocation> getAllResourceLocations(ResourcePackType type, String pathIn, int maxDepth, Predicate<String> filter) {
+        String prefix = pathIn + "/";
+        List<ResourceLocation> list = new ArrayList<>();
+        for (ResourceLocation id : resources.get(type).keySet()) {
+            String path = id.getPath();
+            if (path.startsWith(prefix)) {
+                String fileName = path.substring(path.lastIndexOf('/') + 1);
+                int depth = countSlashes(path, prefix.length());
+                if (depth < maxDepth && filter.test(fileName)) {
+                    list.add(id);
+                }
+            }
+        }
+        return list;
+    }
+
+    private static int countSlashes(String str, int start) {
+        int count = 0;
+        for (int i = start; i < str.length(); ++i) {
+            if (str.charAt(i) == '/') ++count;
+        }
+        return count;
+    }
+
+    @Override
+    public boolean resourceExists(ResourcePackType type, ResourceLocation location) {
+        return resources.get(type).containsKey(location);
+    }
+
+    @Override
+    public Set<String> getResourceNamespaces(ResourcePackType type) {
+        return namespaces.get(type);
+    }
+
+    @Nullable
+    @Override
+    public <T> T getMetadata(IMetadataSectionSerializer<T> deserializer) {
+        if (deserializer == PackMetadataSection.SERIALIZER) {
+            //noinspection unchecked
+            return (T) new PackMetadataSection(new StringTextComponent("Tutorial Mod gems"), PACK_FORMAT);
+        }
+        return null;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to close, and the pack is reused
+    }
+}
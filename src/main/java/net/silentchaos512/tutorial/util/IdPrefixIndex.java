@@ -0,0 +1,75 @@
+package net.silentchaos512.tutorial.util;
+
+import net.minecraft.util.ResourceLocation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * A sorted index of IDs for fast prefix searches, used for command suggestions. Vanilla's
+ * suggestion helpers check every ID each time the player types a character, which adds up when
+ * there are tens of thousands of items. Here, the IDs are sorted once, so finding the matches is a
+ * binary search, and we stop as soon as we have enough.
+ * <p>
+ * Input with a ':' is matched against the full ID. Otherwise, it is matched against both the full ID
+ * (so "tut" finds everything from "tutorial") and the path alone (so "ruby" finds "tutorial:ruby").
+ * Vanilla only matches the path alone for the "minecraft" namespace.
+ */
+public final class IdPrefixIndex {
+    private final String[] ids;
+    private final String[] paths;
+    /** The full ID for each entry in {@link #paths} */
+    private final String[] pathIds;
+
+    public IdPrefixIndex(Collection<ResourceLocation> ids) {
+        this.ids = ids.stream().map(ResourceLocation::toString).sorted().toArray(String[]::new);
+
+        ResourceLocation[] byPath = ids.toArray(new ResourceLocation[0]);
+        Arrays.sort(byPath, Comparator.comparing(ResourceLocation::getPath).thenComparing(ResourceLocation::toString));
+        this.paths = new String[byPath.length];
+        this.pathIds = new String[byPath.length];
+        for (int i = 0; i < byPath.length; ++i) {
+            this.paths[i] = byPath[i].getPath();
+            this.pathIds[i] = byPath[i].toString();
+        }
+    }
+
+    /**
+     * Finds IDs matching the input.
+     *
+     * @param input      What the player has typed so far. Case does not matter.
+     * @param maxResults The most IDs to return
+     * @return Matching IDs, full IDs matches first
+     */
+    public List<String> find(String input, int maxResults) {
+        String prefix = input.toLowerCase(Locale.ROOT);
+        Set<String> results = new LinkedHashSet<>();
+        addMatches(this.ids, this.ids, prefix, maxResults, results);
+        if (prefix.indexOf(':') < 0) {
+            addMatches(this.paths, this.pathIds, prefix, maxResults, results);
+        }
+        return new ArrayList<>(results);
+    }
+
+    private static void addMatches(String[] keys, String[] values, String prefix, int maxResults, Set<String> results) {
+        // Index of the first key which is not less than the prefix. Matches start there.
+        int index = Arrays.binarySearch(keys, prefix);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        while (index < keys.length && results.size() < maxResults && keys[index].startsWith(prefix)) {
+            results.add(values[index]);
+            ++index;
+        }
+    }
+
+    public int size() {
+        return this.ids.length;
+    }
+}
@@ -0,0 +1,45 @@
+package net.silentchaos512.tutorial.util;
+
+import net.minecraft.item.Item;
+import net.minecraft.tags.Tag;
+import net.minecraft.tags.TagCollection;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.registries.ForgeRegistries;
+
+import java.util.BitSet;
+
+/**
+ * Helpers for lists of items written as strings, which are either item IDs ("minecraft:stick") or
+ * item tag IDs starting with '#' ("#forge:dyes"). Used by recipes and IMC rules, which both turn
+ * these lists into sets of raw item IDs for fast lookups.
+ */
+public final class ItemEntries {
+    private ItemEntries() {}
+
+    /**
+     * Adds the raw IDs of the items matching an entry.
+     *
+     * @param entry An item ID, or a tag ID starting with '#'
+     * @param tags  The item tags to look tags up in
+     * @param out   The set to add the item IDs to
+     * @return False if the item or tag does not exist
+     */
+    public static boolean addItems(String entry, TagCollection<Item> tags, BitSet out) {
+        if (entry.startsWith("#")) {
+            Tag<Item> tag = tags.get(new ResourceLocation(entry.substring(1)));
+            if (tag == null) {
+                return false;
+            }
+            for (Item item : tag.getAllElements()) {
+                out.set(Item.getIdFromItem(item));
+            }
+        } else {
+            Item item = ForgeRegistries.ITEMS.getValue(new ResourceLocation(entry));
+            if (item == null) {
+                return false;
+            }
+            out.set(Item.getIdFromItem(item));
+        }
+        return true;
+    }
+}
@@ -0,0 +1,65 @@
+package net.silentchaos512.tutorial.util;
+
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.JsonToNBT;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+/**
+ * Keeps parsed SNBT strings (like {@code {BackpackColor:16711680}}), so commands which are run over
+ * and over with the same NBT only parse it once. Vanilla's give command parses it every time.
+ * <p>
+ * The tags returned are shared templates. Never modify them! Copy them when making an item, which
+ * {@link net.minecraft.item.ItemStack#copy()} does for you.
+ * <p>
+ * The cache holds a limited number of templates, dropping the least recently used one when full.
+ */
+public final class NbtTemplateCache {
+    private final IntSupplier capacity;
+    // accessOrder = true turns a LinkedHashMap into an LRU. The eldest entry is first.
+    private final LinkedHashMap<String, CompoundNBT> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param capacity The most templates to keep. This is a supplier so it can come from the
+     *                 config, which is not loaded yet when the cache is created. 0 turns caching
+     *                 off.
+     */
+    public NbtTemplateCache(IntSupplier capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Gets the template for an SNBT string, parsing it if it is not cached.
+     *
+     * @param snbt The SNBT string
+     * @return The shared tag. Do not modify it.
+     * @throws CommandSyntaxException If the string is not a valid compound tag
+     */
+    public CompoundNBT get(String snbt) throws CommandSyntaxException {
+        synchronized (cache) {
+            CompoundNBT tag = cache.get(snbt);
+            if (tag != null) {
+                return tag;
+            }
+        }
+
+        // Parse outside the lock, the same string being parsed twice at once does no harm
+        CompoundNBT tag = JsonToNBT.getTagFromJson(snbt);
+        synchronized (cache) {
+            int max = capacity.getAsInt();
+            if (max > 0) {
+                cache.put(snbt, tag);
+                Iterator<Map.Entry<String, CompoundNBT>> iterator = cache.entrySet().iterator();
+                while (cache.size() > max && iterator.hasNext()) {
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+        }
+        return tag;
+    }
+}
@@ -0,0 +1,162 @@
+package net.silentchaos512.tutorial.util;
+
+import com.google.common.collect.ImmutableList;
+import net.minecraftforge.event.TickEvent;
+import net.silentchaos512.tutorial.Config;
+import net.silentchaos512.tutorial.TutorialMod;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Spreads big jobs out over several server ticks. A job is a list of small tasks (like giving items
+ * to one player). Each tick, tasks are run until the time budget in the config is used up, and the
+ * rest wait for the next tick. This keeps a command like {@code /sgive @a ...} on a busy server
+ * from freezing the game for a whole tick.
+ * <p>
+ * Tasks run on the server thread, in order. When there are several jobs, they take turns, one task
+ * at a time, so a huge job does not hold up a small one. At least one task runs every tick, even if
+ * the budget is tiny, so every job eventually finishes.
+ * <p>
+ * Tasks should not hold on to players or other things which can go away between ticks. Look them
+ * up again when the task runs (see {@link net.silentchaos512.tutorial.command.SimpleGiveCommand}).
+ */
+public final class TickScheduler {
+    private static final List<Job> JOBS = new ArrayList<>();
+    private static int nextJob;
+
+    private TickScheduler() {}
+
+    /**
+     * Queues a job. Server thread only.
+     *
+     * @param name     A name for the job, used in log messages
+     * @param tasks    The tasks, which run in order
+     * @param listener Told about progress and when the job completes
+     * @return The job
+     */
+    public static Job submit(String name, Collection<? extends Runnable> tasks, Listener listener) {
+        Job job = new Job(name, tasks, listener);
+        if (job.isDone()) {
+            listener.onComplete(job);
+        } else {
+            JOBS.add(job);
+        }
+        return job;
+    }
+
+    /**
+     * Gets the number of jobs which have not finished yet.
+     *
+     * @return The number of queued jobs
+     */
+    public static int getJobCount() {
+        return JOBS.size();
+    }
+
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || JOBS.isEmpty()) return;
+
+        long budgetNanos = Config.COMMON.schedulerTickBudget.get() * 1000L;
+        long start = System.nanoTime();
+
+        do {
+            if (nextJob >= JOBS.size()) {
+                nextJob = 0;
+            }
+            Job job = JOBS.get(nextJob);
+            job.runNext();
+            if (job.isDone()) {
+                JOBS.remove(nextJob);
+                job.listener.onComplete(job);
+            } else {
+                ++nextJob;
+            }
+        } while (!JOBS.isEmpty() && System.nanoTime() - start < budgetNanos);
+
+        int progressInterval = Config.COMMON.schedulerProgressInterval.get();
+        if (progressInterval > 0) {
+            for (Job job : JOBS) {
+                if (++job.ticks % progressInterval == 0) {
+                    job.listener.onProgress(job);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops all jobs without running them. Called when the server stops.
+     */
+    public static void clear() {
+        if (!JOBS.isEmpty()) {
+            TutorialMod.LOGGER.warn("Server stopped with {} unfinished scheduled jobs", JOBS.size());
+        }
+        JOBS.clear();
+        nextJob = 0;
+    }
+
+    public interface Listener {
+        /**
+         * Called every so often while the job is running. See the {@code progressInterval}
+         * config.
+         *
+         * @param job The job
+         */
+        default void onProgress(Job job) {}
+
+        /**
+         * Called once all tasks have run.
+         *
+         * @param job The job
+         */
+        void onComplete(Job job);
+    }
+
+    public static final class Job {
+        private final String name;
+        private final List<Runnable> tasks;
+        private final Listener listener;
+        private int completed;
+        private int failed;
+        private int ticks;
+
+        private Job(String name, Collection<? extends Runnable> tasks, Listener listener) {
+            this.name = name;
+            this.tasks = ImmutableList.copyOf(tasks);
+            this.listener = listener;
+        }
+
+        private void runNext() {
+            Runnable task = this.tasks.get(this.completed);
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                // One broken task should not stop the rest
+                TutorialMod.LOGGER.error("Task {} of scheduled job '{}' failed", this.completed, this.name, ex);
+                ++this.failed;
+            }
+            ++this.completed;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public int getCompleted() {
+            return this.completed;
+        }
+
+        public int getFailed() {
+            return this.failed;
+        }
+
+        public int getTotal() {
+            return this.tasks.size();
+        }
+
+        public boolean isDone() {
+            return this.completed >= this.tasks.size();
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package net.silentchaos512.tutorial.world;
+
+import com.mojang.datafixers.Dynamic;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.IWorld;
+import net.minecraft.world.chunk.IChunk;
+import net.minecraft.world.dimension.DimensionType;
+import net.minecraft.world.gen.ChunkGenerator;
+import net.minecraft.world.gen.GenerationSettings;
+import net.minecraft.world.gen.Heightmap;
+import net.minecraft.world.gen.feature.Feature;
+import net.silentchaos512.tutorial.metrics.Counter;
+import net.silentchaos512.tutorial.metrics.Metrics;
+
+import javax.annotation.Nullable;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Places gem ore veins. The veins are the same shape as vanilla ore veins: a chain of spheres along
+ * a random line, replacing natural stone (stone, granite, diorite and andesite).
+ * <p>
+ * Chunks generate on several worker threads at once, and every chunk places several veins per
+ * gem, so this is written with that in mind. Vanilla's {@link
+ * net.minecraft.world.gen.feature.OreFeature} allocates a bit set and an array for every vein.
+ * Here, each thread keeps its own scratch space and reuses it, so placing a vein allocates nothing.
+ * The feature itself has no other state, apart from a flag to turn it off, and overrides of that
+ * flag for particular chunks (used by {@link net.silentchaos512.tutorial.command.WorldGenCommand}
+ * to generate chunks without ores, without affecting anyone else's chunks).
+ */
+public class GemOreFeature extends Feature<GemOreFeatureConfig> {
+    private static final Counter VEINS = Metrics.counter("worldgen.gem_ore.veins");
+    private static final Counter BLOCKS = Metrics.counter("worldgen.gem_ore.blocks");
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private static volatile boolean enabled = true;
+    // Per-chunk overrides of enabled, by dimension, then ChunkPos.asLong
+    private static final Map<DimensionType, Map<Long, Boolean>> OVERRIDES = new ConcurrentHashMap<>();
+
+    public GemOreFeature(Function<Dynamic<?>, ? extends GemOreFeatureConfig> configFactory) {
+        super(configFactory);
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns gem ore generation on or off. Features are added to biomes once, at startup, so this
+     * is checked when placing instead. Only affects chunks generated afterwards.
+     *
+     * @param value True to generate gem ores
+     */
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    /**
+     * Checks if gem ores are generated in a chunk, taking overrides into account.
+     *
+     * @param dimension The dimension
+     * @param chunk     The chunk
+     * @return True if gem ores are generated there
+     */
+    public static boolean isEnabledIn(DimensionType dimension, ChunkPos chunk) {
+        if (!OVERRIDES.isEmpty()) {
+            Map<Long, Boolean> chunks = OVERRIDES.get(dimension);
+            Boolean override = chunks != null ? chunks.get(chunk.asLong()) : null;
+            if (override != null) {
+                return override;
+            }
+        }
+        return enabled;
+    }
+
+    /**
+     * Turns gem ore generation on or off for some chunks only, no matter what {@link
+     * #setEnabled} says. Remove the overrides with {@link #clearOverrides} when done.
+     *
+     * @param dimension The dimension
+     * @param chunks    The chunks
+     * @param value     True to generate gem ores
+     */
+    public static void setOverrides(DimensionType dimension, Collection<ChunkPos> chunks, boolean value) {
+        Map<Long, Boolean> map = OVERRIDES.computeIfAbsent(dimension, d -> new ConcurrentHashMap<>());
+        chunks.forEach(chunk -> map.put(chunk.asLong(), value));
+    }
+
+    /**
+     * Removes overrides set by {@link #setOverrides}.
+     *
+     * @param dimension The dimension
+     * @param chunks    The chunks
+     */
+    public static void clearOverrides(DimensionType dimension, Collection<ChunkPos> chunks) {
+        Map<Long, Boolean> map = OVERRIDES.get(dimension);
+        if (map != null) {
+            chunks.forEach(chunk -> map.remove(chunk.asLong()));
+            OVERRIDES.remove(dimension, Collections.emptyMap());
+        }
+    }
+
+    /**
+     * Removes all overrides. Called when the server stops.
+     */
+    public static void clearOverrides() {
+        OVERRIDES.clear();
+    }
+
+    @Override
+    public boolean place(IWorld world, ChunkGenerator<? extends GenerationSettings> generator, Random rand, BlockPos pos, GemOreFeatureConfig config) {
+        DimensionType dimension = world.getDimension().getType();
+        ChunkPos chunk = new ChunkPos(pos);
+        if (!isEnabledIn(dimension, chunk)) {
+            return false;
+        }
+        // So retrogen knows this chunk already has gem ores
+        RetrogenMarker.markGenerated(dimension, chunk);
+        return generate(world, null, rand, pos, config, true, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE) > 0;
+    }
+
+    /**
+     * Places one vein, changing only blocks inside the given chunk. This is for retrogen (see
+     * {@link GemOreRetrogen}), where neighboring chunks may not be loaded. The check for veins
+     * above the ground is skipped, because the heightmap it needs only exists while a chunk is
+     * generating. The caller should skip veins in empty sections instead.
+     *
+     * @param world  The world
+     * @param rand   Random for the vein's shape
+     * @param pos    The center of the vein
+     * @param config The ore and vein size
+     * @param chunk  The chunk to place blocks in
+     * @return The number of ore blocks placed
+     */
+    public static int placeInChunk(IWorld world, Random rand, BlockPos pos, GemOreFeatureConfig config, ChunkPos chunk) {
+        return generate(world, null, rand, pos, config, false, chunk.getXStart(), chunk.getZStart(), chunk.getXEnd(), chunk.getZEnd());
+    }
+
+    /**
+     * Like {@link #placeInChunk}, but for a chunk which has not finished generating (a proto-chunk).
+     * Those are not part of the world yet, so blocks are set in the chunk directly.
+     *
+     * @param chunk  The proto-chunk to place blocks in
+     * @param rand   Random for the vein's shape
+     * @param pos    The center of the vein
+     * @param config The ore and vein size
+     * @return The number of ore blocks placed
+     */
+    public static int placeInProtoChunk(IChunk chunk, Random rand, BlockPos pos, GemOreFeatureConfig config) {
+        ChunkPos chunkPos = chunk.getPos();
+        return generate(null, chunk, rand, pos, config, false, chunkPos.getXStart(), chunkPos.getZStart(), chunkPos.getXEnd(), chunkPos.getZEnd());
+    }
+
+    /**
+     * Places one vein. Blocks outside the clip bounds are left alone. Blocks are set in the
+     * proto-chunk if there is one, otherwise in the world.
+     *
+     * @return The number of blocks placed, or -1 if the vein was above ground
+     */
+    private static int generate(@Nullable IWorld world, @Nullable IChunk proto, Random rand, BlockPos pos, GemOreFeatureConfig config,
+                                boolean checkSurface, int clipMinX, int clipMinZ, int clipMaxX, int clipMaxZ) {
+        // The vein runs along a random horizontal line, centered on pos
+        float angle = rand.nextFloat() * (float) Math.PI;
+        float halfLength = config.size / 8f;
+        int maxRadius = MathHelper.ceil((config.size / 16f * 2f + 1f) / 2f);
+        double x1 = pos.getX() + MathHelper.sin(angle) * halfLength;
+        double x2 = pos.getX() - MathHelper.sin(angle) * halfLength;
+        double z1 = pos.getZ() + MathHelper.cos(angle) * halfLength;
+        double z2 = pos.getZ() - MathHelper.cos(angle) * halfLength;
+        double y1 = pos.getY() + rand.nextInt(3) - 2;
+        double y2 = pos.getY() + rand.nextInt(3) - 2;
+
+        // The box the vein can touch
+        int minX = pos.getX() - MathHelper.ceil(halfLength) - maxRadius;
+        int minY = pos.getY() - 2 - maxRadius;
+        int minZ = pos.getZ() - MathHelper.ceil(halfLength) - maxRadius;
+        int width = 2 * (MathHelper.ceil(halfLength) + maxRadius);
+        int height = 2 * (2 + maxRadius);
+
+        if (checkSurface && world != null && isAboveSurface(world, minX, minY, minZ, width)) {
+            return -1;
+        }
+
+        int placed = placeVein(world, proto, rand, config, SCRATCH.get(), x1, x2, y1, y2, z1, z2, minX, minY, minZ, width, height,
+                clipMinX, clipMinZ, clipMaxX, clipMaxZ);
+        VEINS.inc();
+        BLOCKS.add(placed);
+        return placed;
+    }
+
+    /**
+     * Checks if a vein's box is entirely above the ground.
+     */
+    private static boolean isAboveSurface(IWorld world, int minX, int minY, int minZ, int width) {
+        for (int x = minX; x <= minX + width; ++x) {
+            for (int z = minZ; z <= minZ + width; ++z) {
+                if (minY <= world.getHeight(Heightmap.Type.OCEAN_FLOOR_WG, x, z)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    private static int placeVein(@Nullable IWorld world, @Nullable IChunk proto, Random rand, GemOreFeatureConfig config, Scratch scratch,
+                                 double x1, double x2, double y1, double y2, double z1, double z2,
+                                 int minX, int minY, int minZ, int width, int height,
+                                 int clipMinX, int clipMinZ, int clipMaxX, int clipMaxZ) {
+        int size = config.size;
+        double[] spheres = scratch.spheres;
+        BitSet visited = scratch.visited;
+        visited.clear();
+
+        // Spheres along the line, biggest in the middle. Each is x, y, z, radius.
+        for (int i = 0; i < size; ++i) {
+            float t = (float) i / size;
+            double radius = rand.nextDouble() * size / 16.0;
+            spheres[i * 4] = MathHelper.lerp(t, x1, x2);
+            spheres[i * 4 + 1] = MathHelper.lerp(t, y1, y2);
+            spheres[i * 4 + 2] = MathHelper.lerp(t, z1, z2);
+            spheres[i * 4 + 3] = ((MathHelper.sin((float) Math.PI * t) + 1f) * radius + 1.0) / 2.0;
+        }
+
+        // Drop spheres which are inside a bigger one, they would not add anything
+        for (int i = 0; i < size - 1; ++i) {
+            if (spheres[i * 4 + 3] <= 0) continue;
+            for (int j = i + 1; j < size; ++j) {
+                if (spheres[j * 4 + 3] <= 0) continue;
+                double dx = spheres[i * 4] - spheres[j * 4];
+                double dy = spheres[i * 4 + 1] - spheres[j * 4 + 1];
+                double dz = spheres[i * 4 + 2] - spheres[j * 4 + 2];
+                double dr = spheres[i * 4 + 3] - spheres[j * 4 + 3];
+                if (dr * dr > dx * dx + dy * dy + dz * dz) {
+                    if (dr > 0) {
+                        spheres[j * 4 + 3] = -1;
+                    } else {
+                        spheres[i * 4 + 3] = -1;
+                    }
+                }
+            }
+        }
+
+        BlockPos.MutableBlockPos mutablePos = scratch.pos;
+        int placed = 0;
+        for (int i = 0; i < size; ++i) {
+            double radius = spheres[i * 4 + 3];
+            if (radius < 0) continue;
+            double cx = spheres[i * 4];
+            double cy = spheres[i * 4 + 1];
+            double cz = spheres[i * 4 + 2];
+            int startX = Math.max(MathHelper.floor(cx - radius), minX);
+            int startY = Math.max(MathHelper.floor(cy - radius), minY);
+            int startZ = Math.max(MathHelper.floor(cz - radius), minZ);
+            int endX = Math.max(MathHelper.floor(cx + radius), startX);
+            int endY = Math.max(MathHelper.floor(cy + radius), startY);
+            int endZ = Math.max(MathHelper.floor(cz + radius), startZ);
+            startX = Math.max(startX, clipMinX);
+            startZ = Math.max(startZ, clipMinZ);
+            endX = Math.min(endX, clipMaxX);
+            endZ = Math.min(endZ, clipMaxZ);
+
+            for (int x = startX; x <= endX; ++x) {
+                double fx = (x + 0.5 - cx) / radius;
+                if (fx * fx >= 1) continue;
+                for (int y = startY; y <= endY; ++y) {
+                    double fy = (y + 0.5 - cy) / radius;
+                    if (fx * fx + fy * fy >= 1) continue;
+                    for (int z = startZ; z <= endZ; ++z) {
+                        double fz = (z + 0.5 - cz) / radius;
+                        if (fx * fx + fy * fy + fz * fz >= 1) continue;
+
+                        // Spheres overlap, so only look at each block once. The box includes both ends.
+                        int index = (x - minX) + (y - minY) * (width + 1) + (z - minZ) * (width + 1) * (height + 1);
+                        if (visited.get(index)) continue;
+                        visited.set(index);
+
+                        mutablePos.setPos(x, y, z);
+                        if (proto != null) {
+                            if (isNaturalStone(proto.getBlockState(mutablePos))) {
+                                proto.setBlockState(mutablePos, config.state, false);
+                                ++placed;
+                            }
+                        } else if (isNaturalStone(world.getBlockState(mutablePos))) {
+                            world.setBlockState(mutablePos, config.state, 2);
+                            ++placed;
+                        }
+                    }
+                }
+            }
+        }
+        return placed;
+    }
+
+    private static boolean isNaturalStone(BlockState state) {
+        Block block = state.getBlock();
+        return block == Blocks.STONE || block == Blocks.GRANITE || block == Blocks.DIORITE || block == Blocks.ANDESITE;
+    }
+
+    /**
+     * Per-thread scratch space for {@link #placeVein}. Sized for the biggest allowed vein, so it
+     * never grows.
+     */
+    private static final class Scratch {
+        private final double[] spheres = new double[GemOreSettings.MAX_VEIN_SIZE * 4];
+        // Grows to fit the biggest vein's box on first use, after that clear() only zeroes it
+        private final BitSet visited = new BitSet();
+        private final BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+    }
+}
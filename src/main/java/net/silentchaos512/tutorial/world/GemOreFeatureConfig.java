@@ -0,0 +1,37 @@
+package net.silentchaos512.tutorial.world;
+
+import com.google.common.collect.ImmutableMap;
+import com.mojang.datafixers.Dynamic;
+import com.mojang.datafixers.types.DynamicOps;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.gen.feature.IFeatureConfig;
+
+/**
+ * Config for {@link GemOreFeature}, the ore block and vein size. Like vanilla's {@link
+ * net.minecraft.world.gen.feature.OreFeatureConfig}, but always replaces natural stone.
+ */
+public class GemOreFeatureConfig implements IFeatureConfig {
+    public final BlockState state;
+    public final int size;
+
+    public GemOreFeatureConfig(BlockState state, int size) {
+        this.state = state;
+        this.size = MathHelper.clamp(size, 1, GemOreSettings.MAX_VEIN_SIZE);
+    }
+
+    @Override
+    public <T> Dynamic<T> serialize(DynamicOps<T> ops) {
+        return new Dynamic<>(ops, ops.createMap(ImmutableMap.of(
+                ops.createString("size"), ops.createInt(this.size),
+                ops.createString("state"), BlockState.serialize(ops, this.state).getValue()
+        )));
+    }
+
+    public static GemOreFeatureConfig deserialize(Dynamic<?> dynamic) {
+        int size = dynamic.get("size").asInt(1);
+        BlockState state = dynamic.get("state").map(BlockState::deserialize).orElse(Blocks.AIR.getDefaultState());
+        return new GemOreFeatureConfig(state, size);
+    }
+}
@@ -0,0 +1,459 @@
+package net.silentchaos512.tutorial.world;
+
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.ChunkStatus;
+import net.minecraft.world.chunk.IChunk;
+import net.minecraft.world.dimension.DimensionType;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.registries.ForgeRegistries;
+import net.silentchaos512.tutorial.Config;
+import net.silentchaos512.tutorial.TutorialMod;
+import net.silentchaos512.tutorial.init.Gem;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Adds gem ores to overworld chunks which were generated before the ores existed ("retrogen").
+ * Started by an admin with {@code /tutorial retrogen start}, it then runs in the background, a few
+ * chunks per tick, until every chunk has been visited.
+ * <p>
+ * Chunks are visited in region file order: each region file (r.X.Z.mca) in turn, and the chunks in
+ * each file in the order of its header. The header also says which chunks exist, so we never load
+ * (or accidentally generate) a chunk which is not already saved. Chunks which were saved before
+ * their features were placed are skipped, since they will get ores the normal way. Chunks which
+ * had their features placed but never finished generating (proto-chunks) get ores too, directly in
+ * the proto-chunk.
+ * <p>
+ * Work per tick is limited by the retrogen time budget in the config. Loading a chunk is the
+ * expensive part, so at least one chunk is processed per tick, like {@link
+ * net.silentchaos512.tutorial.util.TickScheduler}. Sections which are all air are skipped without
+ * looking at their blocks. Each processed chunk gets a {@link RetrogenMarker}, and the current
+ * position is saved with the world (data/tutorial_retrogen.dat), so the job resumes after a restart
+ * and never does a chunk twice. Chunks are also marked when our feature places ores in them while
+ * they generate, so they are skipped too (see {@link RetrogenMarker}).
+ * <p>
+ * Nothing happens while gem ores are turned off in the config. A running job waits until they are
+ * turned back on.
+ */
+public final class GemOreRetrogen {
+    private static final Pattern REGION_FILE = Pattern.compile("r\\.(-?\\d+)\\.(-?\\d+)\\.mca");
+    private static final int CHUNKS_PER_REGION = 1024;
+
+    @Nullable private static GemOreRetrogen instance;
+
+    private final ServerWorld world;
+    private final File regionDirectory;
+    private final File stateFile;
+    private final Random random = new Random();
+
+    // Saved state. The region is MIN_VALUE before the first region, and MAX_VALUE when finished.
+    private boolean running;
+    private int regionX = Integer.MIN_VALUE;
+    private int regionZ = Integer.MIN_VALUE;
+    private int chunkIndex;
+    private long chunksProcessed;
+    private long chunksSkipped;
+    private long oresPlaced;
+
+    // Worked out again after a restart
+    @Nullable private List<RegionPos> regions;
+    private int regionCursor;
+    @Nullable private BitSet presentChunks;
+    @Nullable private List<Target> targets;
+
+    private GemOreRetrogen(ServerWorld world, File worldDirectory) {
+        this.world = world;
+        this.regionDirectory = new File(worldDirectory, "region");
+        this.stateFile = new File(worldDirectory, "data/tutorial_retrogen.dat");
+    }
+
+    /**
+     * Loads the retrogen state for the server. If retrogen was running when the server stopped, it
+     * continues. Call when the server is starting.
+     *
+     * @param server The server
+     */
+    public static void open(MinecraftServer server) {
+        ServerWorld world = server.getWorld(DimensionType.OVERWORLD);
+        instance = new GemOreRetrogen(world, world.getSaveHandler().getWorldDirectory());
+        instance.load();
+        if (instance.running && !GemOreFeature.isEnabled()) {
+            TutorialMod.LOGGER.info("Gem ore retrogen is paused while gem ores are turned off in the config");
+        } else if (instance.running) {
+            TutorialMod.LOGGER.info("Resuming gem ore retrogen at region ({}, {}), {} chunks done", instance.regionX, instance.regionZ, instance.chunksProcessed);
+        }
+    }
+
+    /**
+     * Saves the retrogen state. Call when the server is stopping.
+     */
+    public static void close() {
+        if (instance != null) {
+            instance.save();
+            instance = null;
+        }
+    }
+
+    @Nullable
+    public static GemOreRetrogen get() {
+        return instance;
+    }
+
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase == TickEvent.Phase.END && instance != null && instance.running && GemOreFeature.isEnabled()) {
+            instance.tick();
+        }
+    }
+
+    /**
+     * Starts retrogen, or does nothing if it is already running. Starts over from the first region
+     * if the last run finished. Chunks from the last run are marked, so they are skipped quickly.
+     */
+    public void start() {
+        if (running) return;
+        if (isFinished()) {
+            regionX = Integer.MIN_VALUE;
+            regionZ = Integer.MIN_VALUE;
+            chunkIndex = 0;
+            chunksProcessed = 0;
+            chunksSkipped = 0;
+            oresPlaced = 0;
+        }
+        regions = null;
+        presentChunks = null;
+        running = true;
+        save();
+        TutorialMod.LOGGER.info("Gem ore retrogen started");
+    }
+
+    /**
+     * Pauses retrogen. {@link #start()} continues where it stopped.
+     */
+    public void stop() {
+        if (!running) return;
+        running = false;
+        save();
+        TutorialMod.LOGGER.info("Gem ore retrogen stopped, {} chunks done", chunksProcessed);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private boolean isFinished() {
+        return regionX == Integer.MAX_VALUE;
+    }
+
+    public long getChunksProcessed() {
+        return chunksProcessed;
+    }
+
+    public long getChunksSkipped() {
+        return chunksSkipped;
+    }
+
+    public long getOresPlaced() {
+        return oresPlaced;
+    }
+
+    /**
+     * Gets the region being processed.
+     *
+     * @return The region file's name, or null if not started or finished
+     */
+    @Nullable
+    public String getCurrentRegion() {
+        if (regionX == Integer.MIN_VALUE || isFinished()) {
+            return null;
+        }
+        return "r." + regionX + "." + regionZ + ".mca";
+    }
+
+    private void tick() {
+        long budgetNanos = Config.COMMON.worldGenRetrogenTickBudget.get() * 1000L;
+        long start = System.nanoTime();
+        do {
+            if (!nextChunk()) {
+                running = false;
+                regionX = Integer.MAX_VALUE;
+                regionZ = Integer.MAX_VALUE;
+                save();
+                TutorialMod.LOGGER.info("Gem ore retrogen finished: {} chunks processed, {} skipped, {} ores placed", chunksProcessed, chunksSkipped, oresPlaced);
+                return;
+            }
+            processChunk(regionX * 32 + (chunkIndex & 31), regionZ * 32 + (chunkIndex >> 5));
+            ++chunkIndex;
+        } while (System.nanoTime() - start < budgetNanos);
+    }
+
+    /**
+     * Moves to the next chunk which exists on disk, opening the next region file when needed.
+     *
+     * @return False if there are no more chunks
+     */
+    private boolean nextChunk() {
+        if (regions == null) {
+            regions = listRegions();
+            // Continue from the saved region. Regions which sort before it are not visited again, even
+            // if they were created since. Start again after finishing to go over those.
+            RegionPos saved = new RegionPos(regionX, regionZ);
+            regionCursor = 0;
+            while (regionCursor < regions.size() && regions.get(regionCursor).compareTo(saved) < 0) {
+                ++regionCursor;
+            }
+            if (regionCursor < regions.size() && regions.get(regionCursor).compareTo(saved) != 0) {
+                chunkIndex = 0;
+            }
+        }
+
+        while (true) {
+            if (presentChunks == null) {
+                if (regionCursor >= regions.size()) {
+                    return false;
+                }
+                RegionPos region = regions.get(regionCursor);
+                regionX = region.x;
+                regionZ = region.z;
+                presentChunks = readPresentChunks(region);
+            }
+
+            int next = presentChunks.nextSetBit(chunkIndex);
+            if (next >= 0) {
+                chunkIndex = next;
+                return true;
+            }
+
+            presentChunks = null;
+            ++regionCursor;
+            chunkIndex = 0;
+        }
+    }
+
+    private List<RegionPos> listRegions() {
+        File[] files = regionDirectory.listFiles();
+        if (files == null) {
+            return Collections.emptyList();
+        }
+
+        List<RegionPos> list = new ArrayList<>();
+        for (File file : files) {
+            Matcher matcher = REGION_FILE.matcher(file.getName());
+            if (matcher.matches()) {
+                list.add(new RegionPos(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))));
+            }
+        }
+        Collections.sort(list);
+        return list;
+    }
+
+    /**
+     * Reads a region file's header, which has a 4-byte location for each chunk. Zero means the chunk
+     * is not in the file.
+     */
+    private BitSet readPresentChunks(RegionPos region) {
+        BitSet present = new BitSet(CHUNKS_PER_REGION);
+        File file = new File(regionDirectory, "r." + region.x + "." + region.z + ".mca");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() >= CHUNKS_PER_REGION * 4) {
+                for (int i = 0; i < CHUNKS_PER_REGION; ++i) {
+                    if (raf.readInt() != 0) {
+                        present.set(i);
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            TutorialMod.LOGGER.error("Could not read region file {}, skipping it", file, ex);
+        }
+        return present;
+    }
+
+    private void processChunk(int chunkX, int chunkZ) {
+        // Load at whatever status it was saved with. Asking for FULL would finish generating it.
+        IChunk saved = world.getChunkProvider().getChunk(chunkX, chunkZ, ChunkStatus.EMPTY, true);
+        if (saved == null) {
+            ++chunksSkipped;
+            return;
+        }
+
+        if (saved.getStatus().isAtLeast(ChunkStatus.FULL)) {
+            Chunk chunk = world.getChunk(chunkX, chunkZ);
+            RetrogenMarker marker = chunk.getCapability(RetrogenMarker.CAPABILITY).orElse(null);
+            if (marker == null || marker.isDone()) {
+                ++chunksSkipped;
+                return;
+            }
+
+            ChunkPos chunkPos = chunk.getPos();
+            Biome biome = chunk.getBiome(new BlockPos(chunkPos.getXStart() + 8, 0, chunkPos.getZStart() + 8));
+            placeOres(chunk, null, biome);
+            marker.setDone();
+            chunk.markDirty();
+            ++chunksProcessed;
+        } else if (saved.getStatus().isAtLeast(ChunkStatus.FEATURES) && saved.getStatus().getType() == ChunkStatus.Type.PROTOCHUNK
+                && !RetrogenMarker.isGenerated(world.getDimension().getType(), saved.getPos())) {
+            // Decorated before the mod existed, so it won't pass through our feature again. The mark
+            // is carried into the chunk's capability when it reaches FULL.
+            placeOres(saved, saved, saved.getBiomes()[8 << 4 | 8]);
+            RetrogenMarker.markGenerated(world.getDimension().getType(), saved.getPos());
+            saved.setModified(true);
+            ++chunksProcessed;
+        } else {
+            // Not decorated yet, or already has gem ores
+            ++chunksSkipped;
+        }
+    }
+
+    /**
+     * Places ores for every gem allowed in the biome.
+     *
+     * @param chunk The chunk, used for its sections
+     * @param proto The chunk if it is a proto-chunk, which needs blocks set in it directly
+     * @param biome The biome in the middle of the chunk
+     */
+    private void placeOres(IChunk chunk, @Nullable IChunk proto, Biome biome) {
+        ChunkPos chunkPos = chunk.getPos();
+        ChunkSection[] sections = chunk.getSections();
+        random.setSeed(world.getSeed() ^ chunkPos.asLong());
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+
+        for (Target target : getTargets()) {
+            if (!target.biomes.contains(biome)) continue;
+
+            GemOreSettings settings = target.settings;
+            for (int i = 0; i < settings.getCount(); ++i) {
+                int x = chunkPos.getXStart() + random.nextInt(16);
+                int y = settings.getMinHeight() + random.nextInt(settings.getMaxHeight() - settings.getMinHeight());
+                int z = chunkPos.getZStart() + random.nextInt(16);
+                // No stone to replace, so don't look at the blocks at all
+                ChunkSection section = sections[y >> 4];
+                if (section == Chunk.EMPTY_SECTION || section.isEmpty()) continue;
+
+                pos.setPos(x, y, z);
+                oresPlaced += proto != null
+                        ? GemOreFeature.placeInProtoChunk(proto, random, pos, target.config)
+                        : GemOreFeature.placeInChunk(world, random, pos, target.config, chunkPos);
+            }
+        }
+    }
+
+    /**
+     * Gets the gems to place, and the biomes for each. Worked out once, since checking a biome
+     * against a gem's biome list is slow.
+     */
+    private List<Target> getTargets() {
+        if (targets == null) {
+            targets = new ArrayList<>();
+            for (Gem gem : Gem.values()) {
+                GemOreSettings settings = gem.getOreSettings();
+                if (settings == null || settings.getCount() == 0) continue;
+
+                Set<Biome> biomes = new HashSet<>();
+                for (Biome biome : ForgeRegistries.BIOMES) {
+                    if (settings.isBiomeAllowed(biome)) {
+                        biomes.add(biome);
+                    }
+                }
+                GemOreFeatureConfig config = new GemOreFeatureConfig(gem.getOreBlock().getDefaultState(), settings.getVeinSize());
+                targets.add(new Target(settings, config, biomes));
+            }
+        }
+        return targets;
+    }
+
+    private void load() {
+        if (!stateFile.isFile()) return;
+        try (InputStream stream = new FileInputStream(stateFile)) {
+            CompoundNBT tags = CompressedStreamTools.readCompressed(stream);
+            running = tags.getBoolean("Running");
+            regionX = tags.getInt("RegionX");
+            regionZ = tags.getInt("RegionZ");
+            chunkIndex = tags.getInt("ChunkIndex");
+            chunksProcessed = tags.getLong("ChunksProcessed");
+            chunksSkipped = tags.getLong("ChunksSkipped");
+            oresPlaced = tags.getLong("OresPlaced");
+        } catch (IOException ex) {
+            TutorialMod.LOGGER.error("Could not read gem ore retrogen state from {}", stateFile, ex);
+        }
+    }
+
+    /**
+     * Saves the current position. Called when the overworld saves, so the position matches the
+     * chunks on disk as closely as possible.
+     */
+    public void save() {
+        CompoundNBT tags = new CompoundNBT();
+        tags.putBoolean("Running", running);
+        tags.putInt("RegionX", regionX);
+        tags.putInt("RegionZ", regionZ);
+        tags.putInt("ChunkIndex", chunkIndex);
+        tags.putLong("ChunksProcessed", chunksProcessed);
+        tags.putLong("ChunksSkipped", chunksSkipped);
+        tags.putLong("OresPlaced", oresPlaced);
+
+        // Write to a temporary file first, so a crash while saving can't lose the old state
+        File tempFile = new File(stateFile.getParentFile(), stateFile.getName() + ".tmp");
+        try {
+            Files.createDirectories(stateFile.getParentFile().toPath());
+            try (OutputStream stream = new FileOutputStream(tempFile)) {
+                CompressedStreamTools.writeCompressed(tags, stream);
+            }
+            Files.move(tempFile.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            TutorialMod.LOGGER.error("Could not save gem ore retrogen state to {}", stateFile, ex);
+        }
+    }
+
+    private static final class RegionPos implements Comparable<RegionPos> {
+        private final int x;
+        private final int z;
+
+        private RegionPos(int x, int z) {
+            this.x = x;
+            this.z = z;
+        }
+
+        @Override
+        public int compareTo(RegionPos other) {
+            int result = Integer.compare(this.z, other.z);
+            return result != 0 ? result : Integer.compare(this.x, other.x);
+        }
+    }
+
+    private static final class Target {
+        private final GemOreSettings settings;
+        private final GemOreFeatureConfig config;
+        private final Set<Biome> biomes;
+
+        private Target(GemOreSettings settings, GemOreFeatureConfig config, Set<Biome> biomes) {
+            this.settings = settings;
+            this.config = config;
+            this.biomes = biomes;
+        }
+    }
+}
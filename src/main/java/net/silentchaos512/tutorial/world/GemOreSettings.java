@@ -0,0 +1,115 @@
+package net.silentchaos512.tutorial.world;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import net.minecraft.util.JSONUtils;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.world.biome.Biome;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * How a gem's ore generates, read from the "ore" object of a gem in the gems file (see {@link
+ * net.silentchaos512.tutorial.init.Gem}). Gems without one do not generate. For example:
+ * <pre>
+ * "ore": {
+ *     "veinSize": 6,
+ *     "count": 3,
+ *     "minHeight": 5,
+ *     "maxHeight": 32,
+ *     "biomes": ["#desert", "#mesa", "minecraft:savanna"]
+ * }
+ * </pre>
+ * Biomes are biome IDs, or biome categories starting with '#' (like "#ocean" or "#extreme_hills").
+ * If there are no biomes, the ore generates in every overworld biome.
+ */
+public final class GemOreSettings {
+    public static final int MAX_VEIN_SIZE = 64;
+
+    private final int veinSize;
+    private final int count;
+    private final int minHeight;
+    private final int maxHeight;
+    private final List<String> biomes;
+
+    private GemOreSettings(int veinSize, int count, int minHeight, int maxHeight, List<String> biomes) {
+        this.veinSize = veinSize;
+        this.count = count;
+        this.minHeight = minHeight;
+        this.maxHeight = maxHeight;
+        this.biomes = ImmutableList.copyOf(biomes);
+    }
+
+    public static GemOreSettings deserialize(JsonObject json) {
+        int veinSize = JSONUtils.getInt(json, "veinSize", 8);
+        int count = JSONUtils.getInt(json, "count", 4);
+        int minHeight = JSONUtils.getInt(json, "minHeight", 5);
+        int maxHeight = JSONUtils.getInt(json, "maxHeight", 32);
+        if (veinSize < 1 || veinSize > MAX_VEIN_SIZE) {
+            throw new JsonParseException("veinSize must be between 1 and " + MAX_VEIN_SIZE + ", got " + veinSize);
+        }
+        if (count < 0) {
+            throw new JsonParseException("count must not be negative, got " + count);
+        }
+        if (minHeight < 0 || maxHeight > 256 || minHeight >= maxHeight) {
+            throw new JsonParseException("Need 0 <= minHeight < maxHeight <= 256, got " + minHeight + " and " + maxHeight);
+        }
+
+        ImmutableList.Builder<String> biomes = ImmutableList.builder();
+        if (json.has("biomes")) {
+            for (JsonElement element : JSONUtils.getJsonArray(json, "biomes")) {
+                biomes.add(JSONUtils.getString(element, "biome"));
+            }
+        }
+        return new GemOreSettings(veinSize, count, minHeight, maxHeight, biomes.build());
+    }
+
+    public int getVeinSize() {
+        return veinSize;
+    }
+
+    /**
+     * Gets the number of veins to try per chunk. Veins in the air or with no stone to replace
+     * place nothing.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public int getMinHeight() {
+        return minHeight;
+    }
+
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    /**
+     * Checks if the ore should generate in a biome. Only called once per biome when features are
+     * added, not during world generation.
+     *
+     * @param biome The biome
+     * @return True if the ore can generate in the biome
+     */
+    public boolean isBiomeAllowed(Biome biome) {
+        Biome.Category category = biome.getCategory();
+        if (biomes.isEmpty()) {
+            return category != Biome.Category.NETHER && category != Biome.Category.THEEND && category != Biome.Category.NONE;
+        }
+
+        ResourceLocation id = biome.getRegistryName();
+        for (String entry : biomes) {
+            if (entry.startsWith("#")) {
+                if (entry.substring(1).equals(category.name().toLowerCase(Locale.ROOT))) {
+                    return true;
+                }
+            } else if (id != null && id.toString().equals(entry)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
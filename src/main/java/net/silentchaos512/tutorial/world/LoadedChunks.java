@@ -0,0 +1,64 @@
+package net.silentchaos512.tutorial.world;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.minecraft.world.IWorld;
+import net.minecraft.world.dimension.DimensionType;
+import net.minecraftforge.event.world.ChunkEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps track of which chunks are loaded in each dimension on the server. Vanilla knows, of course,
+ * but does not let us list them. Used by {@link OreSurvey} to survey all loaded chunks.
+ */
+public final class LoadedChunks {
+    // Guarded by itself. Chunk events should all be on the server thread, but better safe than sorry.
+    private static final Map<DimensionType, LongSet> CHUNKS = new HashMap<>();
+
+    private LoadedChunks() {}
+
+    public static void onChunkLoad(ChunkEvent.Load event) {
+        IWorld world = event.getWorld();
+        if (world != null && !world.isRemote()) {
+            synchronized (CHUNKS) {
+                CHUNKS.computeIfAbsent(world.getDimension().getType(), t -> new LongOpenHashSet()).add(event.getChunk().getPos().asLong());
+            }
+        }
+    }
+
+    public static void onChunkUnload(ChunkEvent.Unload event) {
+        IWorld world = event.getWorld();
+        if (world != null && !world.isRemote()) {
+            synchronized (CHUNKS) {
+                LongSet set = CHUNKS.get(world.getDimension().getType());
+                if (set != null) {
+                    set.remove(event.getChunk().getPos().asLong());
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the positions of the loaded chunks in a dimension.
+     *
+     * @param dimension The dimension
+     * @return A copy of the loaded chunk positions, see {@link net.minecraft.util.math.ChunkPos#asLong}
+     */
+    public static long[] get(DimensionType dimension) {
+        synchronized (CHUNKS) {
+            LongSet set = CHUNKS.get(dimension);
+            return set != null ? set.toLongArray() : new long[0];
+        }
+    }
+
+    /**
+     * Forgets everything. Called when the server stops.
+     */
+    public static void clear() {
+        synchronized (CHUNKS) {
+            CHUNKS.clear();
+        }
+    }
+}
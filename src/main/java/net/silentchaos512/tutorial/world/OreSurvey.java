@@ -0,0 +1,315 @@
+package net.silentchaos512.tutorial.world;
+
+import io.netty.buffer.Unpooled;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkSection;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Counts blocks in loaded chunks, for {@code /tutorial survey}. Built for counting rare blocks,
+ * like ores, in a lot of chunks.
+ * <p>
+ * Each chunk section stores its blocks as indices into a palette of the block states it contains.
+ * Small palettes can have a few stale entries, but a state which is not in the palette is
+ * definitely not in the section. So we check the palette first, and most sections are skipped
+ * without looking at a single block. Only sections whose palette has a target state are copied and
+ * counted block by block.
+ * <p>
+ * Vanilla does not give us the palette directly, but it does write it, followed by the packed block
+ * data, when sending chunks to clients ({@link ChunkSection#write(PacketBuffer)}). We use that
+ * format. The copy is an immutable snapshot, so the counting can happen on worker threads while
+ * the server keeps changing the chunk. Reading the palettes and taking the snapshots happens on the
+ * server thread, and is quick.
+ */
+public final class OreSurvey {
+    // Sections with more bits than this use the global palette, which is just every state ID
+    private static final int MAX_PALETTE_BITS = 8;
+    private static final int BLOCKS_PER_SECTION = 4096;
+
+    private final BitSet targets;
+    private final List<ChunkSnapshot> snapshots = new ArrayList<>();
+    private final PacketBuffer buffer = new PacketBuffer(Unpooled.buffer());
+    private long sectionsEmpty;
+    private long sectionsSkipped;
+    private long sectionsScanned;
+
+    /**
+     * @param targets The block states to count
+     */
+    public OreSurvey(Collection<BlockState> targets) {
+        this.targets = new BitSet();
+        for (BlockState state : targets) {
+            this.targets.set(Block.getStateId(state));
+        }
+    }
+
+    /**
+     * Reads the chunk's palettes and snapshots the sections which may have a target block. Server
+     * thread only.
+     *
+     * @param chunk The chunk
+     */
+    public void add(Chunk chunk) {
+        List<byte[]> sections = new ArrayList<>();
+        for (ChunkSection section : chunk.getSections()) {
+            if (section == Chunk.EMPTY_SECTION || section.isEmpty()) {
+                ++sectionsEmpty;
+                continue;
+            }
+
+            buffer.clear();
+            section.write(buffer);
+            buffer.readShort();
+            int bits = buffer.readUnsignedByte();
+            if (bits <= MAX_PALETTE_BITS && !paletteHasTarget(buffer)) {
+                ++sectionsSkipped;
+                continue;
+            }
+
+            byte[] snapshot = new byte[buffer.writerIndex()];
+            buffer.getBytes(0, snapshot);
+            sections.add(snapshot);
+            ++sectionsScanned;
+        }
+        snapshots.add(new ChunkSnapshot(chunk.getPos(), sections));
+    }
+
+    private boolean paletteHasTarget(PacketBuffer buf) {
+        int size = buf.readVarInt();
+        for (int i = 0; i < size; ++i) {
+            if (targets.get(buf.readVarInt())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts the target blocks in every snapshot, one task per chunk. The survey should not be used
+     * after calling this.
+     *
+     * @param executor The executor to count on
+     * @return The result, once every chunk is counted
+     */
+    public CompletableFuture<Result> count(Executor executor) {
+        List<CompletableFuture<ChunkCount>> futures = new ArrayList<>(snapshots.size());
+        for (ChunkSnapshot snapshot : snapshots) {
+            futures.add(CompletableFuture.supplyAsync(() -> new ChunkCount(snapshot.pos, countChunk(snapshot)), executor));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+            List<ChunkCount> counts = new ArrayList<>(futures.size());
+            futures.forEach(future -> counts.add(future.join()));
+            return new Result(counts, sectionsEmpty, sectionsSkipped, sectionsScanned);
+        });
+    }
+
+    private long countChunk(ChunkSnapshot snapshot) {
+        long total = 0;
+        for (byte[] section : snapshot.sections) {
+            total += countSection(new PacketBuffer(Unpooled.wrappedBuffer(section)));
+        }
+        return total;
+    }
+
+    private int countSection(PacketBuffer buf) {
+        buf.readShort();
+        int bits = buf.readUnsignedByte();
+
+        // For each palette entry, is it a target? With the global palette, entries are state IDs.
+        boolean[] matches = null;
+        if (bits <= MAX_PALETTE_BITS) {
+            matches = new boolean[buf.readVarInt()];
+            for (int i = 0; i < matches.length; ++i) {
+                matches[i] = targets.get(buf.readVarInt());
+            }
+        }
+        long[] data = buf.readLongArray(null);
+
+        // Entries are packed end to end, so some are split between two longs (see BitArray)
+        long mask = (1L << bits) - 1L;
+        int count = 0;
+        for (int index = 0; index < BLOCKS_PER_SECTION; ++index) {
+            int bitIndex = index * bits;
+            int start = bitIndex >> 6;
+            int end = ((index + 1) * bits - 1) >> 6;
+            int offset = bitIndex & 63;
+            int value;
+            if (start == end) {
+                value = (int) (data[start] >>> offset & mask);
+            } else {
+                value = (int) ((data[start] >>> offset | data[end] << (64 - offset)) & mask);
+            }
+
+            if (matches != null ? value < matches.length && matches[value] : targets.get(value)) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    private static final class ChunkSnapshot {
+        private final ChunkPos pos;
+        private final List<byte[]> sections;
+
+        private ChunkSnapshot(ChunkPos pos, List<byte[]> sections) {
+            this.pos = pos;
+            this.sections = sections;
+        }
+    }
+
+    public static final class ChunkCount {
+        public final ChunkPos pos;
+        public final long count;
+
+        private ChunkCount(ChunkPos pos, long count) {
+            this.pos = pos;
+            this.count = count;
+        }
+    }
+
+    public static final class Result {
+        // Darker characters for more blocks
+        private static final String HEATMAP_CHARS = " .:-=+*#%@";
+        // Bigger areas are scaled down to fit
+        private static final int MAX_HEATMAP_SIZE = 256;
+
+        private final List<ChunkCount> chunks;
+        private final long total;
+        private final long sectionsEmpty;
+        private final long sectionsSkipped;
+        private final long sectionsScanned;
+
+        private Result(List<ChunkCount> chunks, long sectionsEmpty, long sectionsSkipped, long sectionsScanned) {
+            this.chunks = chunks;
+            this.total = chunks.stream().mapToLong(c -> c.count).sum();
+            this.sectionsEmpty = sectionsEmpty;
+            this.sectionsSkipped = sectionsSkipped;
+            this.sectionsScanned = sectionsScanned;
+        }
+
+        public int getChunkCount() {
+            return chunks.size();
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public long getSectionsEmpty() {
+            return sectionsEmpty;
+        }
+
+        public long getSectionsSkipped() {
+            return sectionsSkipped;
+        }
+
+        public long getSectionsScanned() {
+            return sectionsScanned;
+        }
+
+        /**
+         * Gets the chunks with the most target blocks.
+         *
+         * @param limit The maximum number of chunks
+         * @return Chunks with at least one target block, most first
+         */
+        public List<ChunkCount> getTop(int limit) {
+            List<ChunkCount> list = new ArrayList<>();
+            chunks.stream()
+                    .filter(c -> c.count > 0)
+                    .sorted(Comparator.comparingLong((ChunkCount c) -> c.count).reversed())
+                    .limit(limit)
+                    .forEach(list::add);
+            return list;
+        }
+
+        /**
+         * Writes a heatmap of the surveyed area, then the count for each chunk as CSV.
+         *
+         * @param file   The file to write
+         * @param header Lines to write first, describing the survey
+         * @throws IOException If the file cannot be written
+         */
+        public void write(Path file, List<String> header) throws IOException {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+                header.forEach(out::println);
+                out.println(String.format("Chunks: %d. Sections: %d scanned, %d skipped by palette, %d empty. Total blocks: %d",
+                        chunks.size(), sectionsScanned, sectionsSkipped, sectionsEmpty, total));
+                out.println();
+                writeHeatmap(out);
+                out.println();
+                out.println("chunk_x,chunk_z,count");
+                for (ChunkCount chunk : chunks) {
+                    out.println(chunk.pos.x + "," + chunk.pos.z + "," + chunk.count);
+                }
+            }
+        }
+
+        private void writeHeatmap(PrintWriter out) {
+            if (chunks.isEmpty()) return;
+
+            int minX = Integer.MAX_VALUE;
+            int minZ = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE;
+            int maxZ = Integer.MIN_VALUE;
+            for (ChunkCount chunk : chunks) {
+                minX = Math.min(minX, chunk.pos.x);
+                minZ = Math.min(minZ, chunk.pos.z);
+                maxX = Math.max(maxX, chunk.pos.x);
+                maxZ = Math.max(maxZ, chunk.pos.z);
+            }
+
+            // Each cell covers scale x scale chunks, and shows their total
+            int scale = Math.max(1, (Math.max(maxX - minX, maxZ - minZ) + MAX_HEATMAP_SIZE) / MAX_HEATMAP_SIZE);
+            int width = (maxX - minX) / scale + 1;
+            int height = (maxZ - minZ) / scale + 1;
+            long[] cells = new long[width * height];
+            boolean[] surveyed = new boolean[width * height];
+            for (ChunkCount chunk : chunks) {
+                int cell = (chunk.pos.x - minX) / scale + (chunk.pos.z - minZ) / scale * width;
+                cells[cell] += chunk.count;
+                surveyed[cell] = true;
+            }
+            long max = 0;
+            for (long value : cells) {
+                max = Math.max(max, value);
+            }
+
+            out.println(String.format("Heatmap: X %d to %d (left to right), Z %d to %d (top to bottom), %dx%d chunks per character, max %d.",
+                    minX, maxX, minZ, maxZ, scale, scale, max));
+            out.println("' ' means none, '" + HEATMAP_CHARS.charAt(HEATMAP_CHARS.length() - 1) + "' means the most, '?' means not surveyed.");
+            StringBuilder line = new StringBuilder(width);
+            for (int z = 0; z < height; ++z) {
+                line.setLength(0);
+                for (int x = 0; x < width; ++x) {
+                    int cell = x + z * width;
+                    if (!surveyed[cell]) {
+                        line.append('?');
+                    } else if (cells[cell] == 0) {
+                        line.append(' ');
+                    } else {
+                        int level = 1 + (int) ((cells[cell] - 1) * (HEATMAP_CHARS.length() - 1) / max);
+                        line.append(HEATMAP_CHARS.charAt(Math.min(level, HEATMAP_CHARS.length() - 1)));
+                    }
+                }
+                out.println(line);
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package net.silentchaos512.tutorial.world;
+
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.INBT;
+import net.minecraft.util.Direction;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.IWorld;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkStatus;
+import net.minecraft.world.chunk.IChunk;
+import net.minecraft.world.dimension.DimensionType;
+import net.minecraftforge.common.capabilities.Capability;
+import net.minecraftforge.common.capabilities.CapabilityInject;
+import net.minecraftforge.common.capabilities.CapabilityManager;
+import net.minecraftforge.common.capabilities.ICapabilitySerializable;
+import net.minecraftforge.common.util.LazyOptional;
+import net.minecraftforge.event.AttachCapabilitiesEvent;
+import net.minecraftforge.event.world.ChunkDataEvent;
+import net.silentchaos512.tutorial.TutorialMod;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A chunk capability which remembers if gem ore retrogen has already run on the chunk. Forge saves
+ * chunk capabilities with the chunk, so the mark is saved at the same time as the ores themselves.
+ * Even if the retrogen progress is lost or reset, a chunk never gets a second set of ores.
+ * <p>
+ * A chunk is marked when our feature actually placed ores in it, which happens while it is still
+ * a proto-chunk. Proto-chunks have no capabilities, so until the chunk is promoted to FULL, the
+ * mark is kept in a set here, and saved in the proto-chunk's data (see {@link #onChunkDataSave}).
+ * The capability is created marked if the set has the chunk. Chunks saved before the mod existed,
+ * including proto-chunks which were decorated back then, have no mark, so retrogen gives them
+ * ores.
+ * <p>
+ * Only chunks which are marked store anything. Everything else writes an empty tag.
+ */
+public final class RetrogenMarker {
+    @CapabilityInject(RetrogenMarker.class)
+    public static Capability<RetrogenMarker> CAPABILITY = null;
+    private static final ResourceLocation ID = TutorialMod.getId("retrogen");
+    // In the Level tag of proto-chunks
+    private static final String NBT_PROTO_DONE = "TutorialGemOres";
+    // Proto-chunks with gem ores, by dimension, then ChunkPos.asLong. Written by worker threads.
+    private static final Map<DimensionType, Set<Long>> GENERATED = new ConcurrentHashMap<>();
+
+    private boolean done;
+
+    private RetrogenMarker(boolean done) {
+        this.done = done;
+    }
+
+    /**
+     * Registers the capability. Call during common setup.
+     */
+    public static void register() {
+        CapabilityManager.INSTANCE.register(RetrogenMarker.class, new Capability.IStorage<RetrogenMarker>() {
+            @Nullable
+            @Override
+            public INBT writeNBT(Capability<RetrogenMarker> capability, RetrogenMarker instance, Direction side) {
+                return instance.serializeNBT();
+            }
+
+            @Override
+            public void readNBT(Capability<RetrogenMarker> capability, RetrogenMarker instance, Direction side, INBT nbt) {
+                if (nbt instanceof CompoundNBT) {
+                    instance.deserializeNBT((CompoundNBT) nbt);
+                }
+            }
+        }, () -> new RetrogenMarker(false));
+    }
+
+    public static void attach(AttachCapabilitiesEvent<Chunk> event) {
+        // Retrogen only runs on the server
+        if (!event.getObject().getWorld().isRemote) {
+            // New chunks are made when a proto-chunk reaches FULL. Chunks loaded from disk are
+            // never in the set, and read their mark from their saved data, if they have one.
+            Chunk chunk = event.getObject();
+            event.addCapability(ID, new Provider(takeGenerated(chunk.getWorld().getDimension().getType(), chunk.getPos())));
+        }
+    }
+
+    /**
+     * Remembers that gem ores were placed in a chunk while it was generating. Called by {@link
+     * GemOreFeature} on a worker thread, before the chunk is a real chunk with capabilities.
+     *
+     * @param dimension The dimension
+     * @param chunk     The chunk
+     */
+    static void markGenerated(DimensionType dimension, ChunkPos chunk) {
+        GENERATED.computeIfAbsent(dimension, d -> ConcurrentHashMap.newKeySet()).add(chunk.asLong());
+    }
+
+    /**
+     * Checks if a proto-chunk has gem ores, either from generating or from retrogen.
+     *
+     * @param dimension The dimension
+     * @param chunk     The chunk
+     * @return True if it has gem ores
+     */
+    static boolean isGenerated(DimensionType dimension, ChunkPos chunk) {
+        Set<Long> set = GENERATED.get(dimension);
+        return set != null && set.contains(chunk.asLong());
+    }
+
+    private static boolean takeGenerated(DimensionType dimension, ChunkPos chunk) {
+        Set<Long> set = GENERATED.get(dimension);
+        return set != null && set.remove(chunk.asLong());
+    }
+
+    /**
+     * Reads the mark of a proto-chunk, which has no capabilities to store it in.
+     *
+     * @param event The event
+     */
+    public static void onChunkDataLoad(ChunkDataEvent.Load event) {
+        IChunk chunk = event.getChunk();
+        if (chunk.getStatus().getType() == ChunkStatus.Type.PROTOCHUNK
+                && event.getData().getCompound("Level").getBoolean(NBT_PROTO_DONE)) {
+            markGenerated(getDimension(chunk), chunk.getPos());
+        }
+    }
+
+    /**
+     * Saves the mark of a proto-chunk, so it is still there when the chunk is loaded again.
+     *
+     * @param event The event
+     */
+    public static void onChunkDataSave(ChunkDataEvent.Save event) {
+        IChunk chunk = event.getChunk();
+        if (chunk.getStatus().getType() == ChunkStatus.Type.PROTOCHUNK
+                && isGenerated(getDimension(chunk), chunk.getPos())) {
+            event.getData().getCompound("Level").putBoolean(NBT_PROTO_DONE, true);
+        }
+    }
+
+    /**
+     * Gets the dimension of a chunk. Proto-chunks don't know their world in this version of Forge,
+     * so those are assumed to be in the overworld, the only dimension retrogen covers. At worst, a
+     * proto-chunk elsewhere shares a mark with the overworld chunk at the same position.
+     */
+    private static DimensionType getDimension(IChunk chunk) {
+        IWorld world = chunk.getWorldForge();
+        return world != null ? world.getDimension().getType() : DimensionType.OVERWORLD;
+    }
+
+    /**
+     * Forgets all proto-chunk marks. They are saved with the chunks. Called when the server stops.
+     */
+    public static void clear() {
+        GENERATED.clear();
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public void setDone() {
+        done = true;
+    }
+
+    private CompoundNBT serializeNBT() {
+        CompoundNBT tags = new CompoundNBT();
+        if (done) {
+            tags.putBoolean("Done", true);
+        }
+        return tags;
+    }
+
+    private void deserializeNBT(CompoundNBT tags) {
+        done = tags.getBoolean("Done");
+    }
+
+    private static final class Provider implements ICapabilitySerializable<CompoundNBT> {
+        private final RetrogenMarker marker;
+        private final LazyOptional<RetrogenMarker> optional;
+
+        private Provider(boolean done) {
+            this.marker = new RetrogenMarker(done);
+            this.optional = LazyOptional.of(() -> this.marker);
+        }
+
+        @Override
+        public <T> LazyOptional<T> getCapability(Capability<T> cap, @Nullable Direction side) {
+            return CAPABILITY.orEmpty(cap, optional);
+        }
+
+        @Override
+        public CompoundNBT serializeNBT() {
+            return marker.serializeNBT();
+        }
+
+        @Override
+        public void deserializeNBT(CompoundNBT nbt) {
+            marker.deserializeNBT(nbt);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package net.silentchaos512.tutorial.crafting;
+
+import net.minecraft.item.DyeColor;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link DyeBlender} against the float version it replaced ({@link #applyDyes}, which is
+ * how vanilla dyes leather armor), for every combination of one to eight dyes, the most a crafting
+ * grid can hold next to a backpack.
+ */
+public class DyeBlenderTest {
+    private static final DyeColor[] COLORS = DyeColor.values();
+    private static final int MAX_DYES = 8;
+    private static final int[] BASE_COLORS = {
+            DyeColor.WHITE.getFireworkColor(), 0x000000, 0xFFFFFF, 0x7F7F7F, 0xA06540, 0x3C44AA,
+            0xB02E26, 0x123456, 0xFEDCBA, 0x010203
+    };
+
+    @Test
+    public void blendMatchesVanillaForAllDyeCombinations() {
+        for (int baseColor : BASE_COLORS) {
+            int[] counts = new int[COLORS.length];
+            checkCombinations(baseColor, counts, 0, 0);
+        }
+    }
+
+    @Test
+    public void singleDyeMatchesCounts() {
+        for (int baseColor : BASE_COLORS) {
+            for (DyeColor dye : COLORS) {
+                for (int count = 0; count <= 64; ++count) {
+                    int[] counts = new int[COLORS.length];
+                    counts[dye.getId()] = count;
+                    String message = "base " + Integer.toHexString(baseColor) + ", " + count + "x " + dye;
+                    assertEquals(message, DyeBlender.blend(baseColor, counts), DyeBlender.blend(baseColor, dye, count));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void singleDyeMatchesVanillaForAllBaseColors() {
+        for (int baseColor = 0; baseColor <= 0xFFFFFF; baseColor += 7) {
+            for (DyeColor dye : COLORS) {
+                int[] counts = new int[COLORS.length];
+                counts[dye.getId()] = 1;
+                String message = "base " + Integer.toHexString(baseColor) + ", " + dye;
+                assertEquals(message, applyDyes(baseColor, counts), DyeBlender.blend(baseColor, dye, 1));
+            }
+        }
+    }
+
+    /**
+     * Tries every multiset of dyes, by choosing how many of each color (from {@code colorIndex}
+     * on) to add to the {@code total} dyes chosen so far.
+     */
+    private static void checkCombinations(int baseColor, int[] counts, int colorIndex, int total) {
+        if (colorIndex == COLORS.length) {
+            if (total > 0) {
+                assertEquals(describe(baseColor, counts), applyDyes(baseColor, counts), DyeBlender.blend(baseColor, counts));
+            }
+            return;
+        }
+        for (int count = 0; total + count <= MAX_DYES; ++count) {
+            counts[colorIndex] = count;
+            checkCombinations(baseColor, counts, colorIndex + 1, total + count);
+        }
+        counts[colorIndex] = 0;
+    }
+
+    private static String describe(int baseColor, int[] counts) {
+        StringBuilder builder = new StringBuilder("base ").append(Integer.toHexString(baseColor));
+        for (DyeColor color : COLORS) {
+            if (counts[color.getId()] > 0) {
+                builder.append(", ").append(counts[color.getId()]).append("x ").append(color);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * The recolor recipe's original float math, copied from vanilla, with the dye stacks replaced
+     * by counts.
+     */
+    private static int applyDyes(int backpackColor, int[] dyeCounts) {
+        int[] componentSums = new int[3];
+        int maxColorSum = 0;
+        int colorCount = 0;
+
+        if (backpackColor != DyeColor.WHITE.getFireworkColor()) {
+            float r = (float) (backpackColor >> 16 & 255) / 255.0F;
+            float g = (float) (backpackColor >> 8 & 255) / 255.0F;
+            float b = (float) (backpackColor & 255) / 255.0F;
+            maxColorSum = (int) ((float) maxColorSum + Math.max(r, Math.max(g, b)) * 255.0F);
+            componentSums[0] = (int) ((float) componentSums[0] + r * 255.0F);
+            componentSums[1] = (int) ((float) componentSums[1] + g * 255.0F);
+            componentSums[2] = (int) ((float) componentSums[2] + b * 255.0F);
+            ++colorCount;
+        }
+
+        for (DyeColor dyeColor : COLORS) {
+            for (int n = 0; n < dyeCounts[dyeColor.getId()]; ++n) {
+                float[] componentValues = dyeColor.getColorComponentValues();
+                int r = (int) (componentValues[0] * 255.0F);
+                int g = (int) (componentValues[1] * 255.0F);
+                int b = (int) (componentValues[2] * 255.0F);
+                maxColorSum += Math.max(r, Math.max(g, b));
+                componentSums[0] += r;
+                componentSums[1] += g;
+                componentSums[2] += b;
+                ++colorCount;
+            }
+        }
+
+        if (colorCount == 0) {
+            return -1;
+        }
+
+        int r = componentSums[0] / colorCount;
+        int g = componentSums[1] / colorCount;
+        int b = componentSums[2] / colorCount;
+        float maxAverage = (float) maxColorSum / (float) colorCount;
+        float max = (float) Math.max(r, Math.max(g, b));
+        r = (int) ((float) r * maxAverage / max);
+        g = (int) ((float) g * maxAverage / max);
+        b = (int) ((float) b * maxAverage / max);
+        int finalColor = (r << 8) + g;
+        finalColor = (finalColor << 8) + b;
+        return finalColor;
+    }
+}
@@ -0,0 +1,55 @@
+package net.silentchaos512.tutorial.inventory;
+
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.minecraft.util.registry.Bootstrap;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Shift-clicking into a backpack, through {@link BackpackContainer#moveIntoHandler}. A real
+ * container needs a player in a world, so these only test the server's half of the move.
+ */
+public class BackpackContainerTest {
+    @BeforeClass
+    public static void setup() {
+        Bootstrap.register();
+    }
+
+    @Test
+    public void fullStackIntoEmptyBackpack() {
+        BackpackItemHandler handler = new BackpackItemHandler(27);
+        ItemStack stack = new ItemStack(Items.IRON_INGOT, 64);
+
+        assertTrue(BackpackContainer.moveIntoHandler(handler, stack));
+        assertTrue(stack.isEmpty());
+        assertEquals(Items.IRON_INGOT, handler.getStackInSlot(0).getItem());
+        assertEquals(64, handler.getStackInSlot(0).getCount());
+    }
+
+    @Test
+    public void partialStackIntoAlmostFullSlot() {
+        BackpackItemHandler handler = new BackpackItemHandler(1);
+        handler.setStackInSlot(0, new ItemStack(Items.IRON_INGOT, 60));
+        ItemStack stack = new ItemStack(Items.IRON_INGOT, 10);
+
+        assertTrue(BackpackContainer.moveIntoHandler(handler, stack));
+        assertEquals(6, stack.getCount());
+        assertEquals(64, handler.getStackInSlot(0).getCount());
+    }
+
+    @Test
+    public void nothingMovedIntoFullBackpack() {
+        BackpackItemHandler handler = new BackpackItemHandler(1);
+        handler.setStackInSlot(0, new ItemStack(Items.DIRT, 64));
+        ItemStack stack = new ItemStack(Items.IRON_INGOT, 64);
+
+        assertFalse(BackpackContainer.moveIntoHandler(handler, stack));
+        assertEquals(64, stack.getCount());
+        assertEquals(64, handler.getStackInSlot(0).getCount());
+    }
+}